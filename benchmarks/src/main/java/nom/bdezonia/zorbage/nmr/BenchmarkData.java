@@ -0,0 +1,91 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the input files the benchmarks read. Files are created in the
+ * temp directory and removed when the JVM exits.
+ * 
+ * @author Barry DeZonia
+ */
+final class BenchmarkData {
+
+	private static final long SEED = 20230126L;
+	
+	// do not instantiate
+	
+	private BenchmarkData() { }
+
+	static File tempFile(String suffix) throws IOException {
+		
+		File file = File.createTempFile("zorbage-nmr-bench", suffix);
+		
+		file.deleteOnExit();
+		
+		return file;
+	}
+	
+	/**
+	 * Write a 1d or 2d synthetic nmrPipe spectrum.
+	 * 
+	 * @param xSize The number of points (real or complex) per row.
+	 * @param ySize The number of rows. 1 makes a 1d file.
+	 */
+	static File nmrPipe(int xSize, int ySize, boolean complex) throws IOException {
+		
+		long[] dims = (ySize > 1) ? new long[] {xSize, ySize} : new long[] {xSize};
+		
+		File file = tempFile(".ft2");
+		
+		new SyntheticSpectrum(SEED, dims).writeNmrPipe(file.getPath(), complex, ByteOrder.BIG_ENDIAN);
+		
+		return file;
+	}
+
+	/**
+	 * Write a real valued synthetic UCSF spectrum.
+	 * 
+	 * @param sizes The number of points along each axis in zorbage order.
+	 * @param tileSizes The tile size along each axis in zorbage order.
+	 */
+	static File ucsf(int[] sizes, int[] tileSizes) throws IOException {
+		
+		long[] dims = new long[sizes.length];
+		
+		for (int i = 0; i < sizes.length; i++) {
+			
+			dims[i] = sizes[i];
+		}
+		
+		File file = tempFile(".ucsf");
+		
+		new SyntheticSpectrum(SEED, dims).writeUcsf(file.getPath(), tileSizes);
+		
+		return file;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached and prints a summary
+ * of throughput in MB/s and allocation rate for every benchmark and
+ * parameter combination.
+ * 
+ * Usage: java -jar benchmarks.jar [benchmark regex]
+ * 
+ * @author Barry DeZonia
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException {
+		
+		String include = (args.length > 0) ? args[0] : ".*Benchmark";
+		
+		Options options =
+				
+			new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		Collection<RunResult> results = new Runner(options).run();
+		
+		System.out.println();
+		
+		System.out.println(String.format("%-60s %12s %12s %14s %14s", "benchmark", "ops/s", "MB/s", "alloc MB/s", "alloc B/op"));
+		
+		for (RunResult result : results) {
+			
+			StringBuilder name = new StringBuilder(result.getParams().getBenchmark().replaceAll(".*\\.(\\w+\\.\\w+)$", "$1"));
+			
+			for (String key : result.getParams().getParamsKeys()) {
+				
+				name.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+			}
+			
+			Map<String, Result> secondary = result.getSecondaryResults();
+			
+			System.out.println(String.format("%-60s %12.3f %12s %14s %14s",
+					name,
+					result.getPrimaryResult().getScore(),
+					score(secondary, "bytes", 1e-6),
+					score(secondary, "gc.alloc.rate", 1),
+					score(secondary, "gc.alloc.rate.norm", 1)));
+		}
+	}
+	
+	private static String score(Map<String, Result> results, String suffix, double scale) {
+		
+		for (Map.Entry<String, Result> entry : results.entrySet()) {
+			
+			String key = entry.getKey();
+			
+			if (key.equals(suffix) || key.endsWith("\u00b7" + suffix))
+				
+				return String.format("%.1f", entry.getValue().getScore() * scale);
+		}
+		
+		return "-";
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
+import nom.bdezonia.zorbage.data.NdData;
+import nom.bdezonia.zorbage.storage.Storage;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * Measures projecting every point of a 2d grid to ppm through PipeSpace
+ * and UcsfSpace. One operation projects both axes of the whole grid.
+ * 
+ * @author Barry DeZonia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoordinateSpaceBenchmark {
+
+	@Param({"pipe", "ucsf"})
+	public String space;
+	
+	@Param({"32", "128", "256"})
+	public int side;
+	
+	private CoordinateSpace coordSpace;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		
+		NdData<Float32Member> data =
+				
+			new NdData<>(new long[] {side, side}, Storage.allocate(G.FLT.construct(), (long) side * side));
+		
+		for (int i = 0; i < 2; i++) {
+			
+			data.metadata().putFloat("dim " + i + " offset", 1000);
+			data.metadata().putFloat("dim " + i + " sweep width", 8000);
+			data.metadata().putFloat("dim " + i + " obs freq", 600);
+		}
+		
+		String[] ordinals = new String[] {"1st", "2nd"};
+		
+		for (int i = 0; i < 2; i++) {
+			
+			data.metadata().putString(ordinals[i] + " axis spectrometer frequency (MHz)", "600");
+			data.metadata().putString(ordinals[i] + " axis spectral width (Hz)", "8000");
+			data.metadata().putString(ordinals[i] + " axis transmitter offset (ppm)", "4.7");
+		}
+		
+		if (space.equals("pipe"))
+			
+			coordSpace = new NmrPipeReader.PipeSpace(data);
+		
+		else
+			
+			coordSpace = new UcsfReader.UcsfSpace(data);
+	}
+	
+	@Benchmark
+	public void projectGrid(Blackhole bh) {
+		
+		long[] coord = new long[2];
+		
+		BigDecimal[] output = new BigDecimal[2];
+		
+		for (long y = 0; y < side; y++) {
+			
+			coord[1] = y;
+			
+			for (long x = 0; x < side; x++) {
+			
+				coord[0] = x;
+				
+				coordSpace.project(coord, output);
+				
+				bh.consume(output[0]);
+				
+				bh.consume(output[1]);
+			}
+		}
+	}
+}
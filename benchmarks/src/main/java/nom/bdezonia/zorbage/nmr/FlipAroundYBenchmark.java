@@ -0,0 +1,106 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.NdData;
+import nom.bdezonia.zorbage.storage.Storage;
+import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * Measures NmrPipeReader.flipAroundY() on real and complex planes.
+ * 
+ * @author Barry DeZonia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlipAroundYBenchmark {
+
+	@Param({"real", "complex"})
+	public String type;
+	
+	@Param({"128", "512", "2048"})
+	public int side;
+	
+	private NdData<Float32Member> reals;
+	
+	private NdData<ComplexFloat32Member> complexes;
+	
+	private long bytes;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		
+		long[] dims = new long[] {side, side};
+		
+		long n = (long) side * side;
+		
+		if (type.equals("real")) {
+			
+			reals = new NdData<>(dims, Storage.allocate(G.FLT.construct(), n));
+			
+			bytes = 4 * n;
+		}
+		else {
+			
+			complexes = new NdData<>(dims, Storage.allocate(G.CFLT.construct(), n));
+			
+			bytes = 8 * n;
+		}
+	}
+	
+	@Benchmark
+	public void flipAroundY(ByteCounter counter) {
+		
+		if (reals != null)
+			
+			NmrPipeReader.flipAroundY(G.FLT, reals);
+		
+		else
+			
+			NmrPipeReader.flipAroundY(G.CFLT, complexes);
+		
+		counter.bytes += bytes;
+	}
+}
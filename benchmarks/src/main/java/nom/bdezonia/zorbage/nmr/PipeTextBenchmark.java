@@ -0,0 +1,162 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.data.DimensionedStorage;
+import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.type.complex.float64.ComplexFloat64Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * Measures PipeToTextWriter and PipeToTextReader on 2d real and complex
+ * grids: writing, reading, and a full write then read round trip.
+ * 
+ * @author Barry DeZonia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeTextBenchmark {
+
+	@Param({"real", "complex"})
+	public String type;
+	
+	@Param({"64", "256", "1024"})
+	public int side;
+	
+	@Param({"1", "4"})
+	public int threads;
+	
+	private DimensionedDataSource<Float64Member> reals;
+	
+	private DimensionedDataSource<ComplexFloat64Member> complexes;
+	
+	private File input;
+	
+	private File output;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		
+		long[] dims = new long[] {side, side};
+		
+		if (type.equals("real")) {
+			
+			reals = DimensionedStorage.allocate(G.DBL.construct(), dims);
+			
+			Float64Member value = G.DBL.construct();
+			
+			for (long i = 0; i < reals.rawData().size(); i++) {
+				
+				value.setV(Math.sin(i * 0.001) * 1000);
+				
+				reals.rawData().set(i, value);
+			}
+		}
+		else {
+			
+			complexes = DimensionedStorage.allocate(G.CDBL.construct(), dims);
+			
+			ComplexFloat64Member value = G.CDBL.construct();
+			
+			for (long i = 0; i < complexes.rawData().size(); i++) {
+				
+				value.setR(Math.sin(i * 0.001) * 1000);
+				
+				value.setI(Math.cos(i * 0.001) * 1000);
+				
+				complexes.rawData().set(i, value);
+			}
+		}
+		
+		input = BenchmarkData.tempFile(".txt");
+		
+		output = BenchmarkData.tempFile(".txt");
+		
+		writeTo(input);
+	}
+	
+	private void writeTo(File file) {
+		
+		if (reals != null)
+			
+			PipeToTextWriter.writeAs(file.getAbsolutePath(), G.DBL, reals, threads);
+		
+		else
+			
+			PipeToTextWriter.writeAs(file.getAbsolutePath(), G.CDBL, complexes, threads);
+	}
+	
+	@Benchmark
+	public void write(ByteCounter counter) {
+		
+		writeTo(output);
+		
+		counter.bytes += output.length();
+	}
+	
+	@Benchmark
+	public DataBundle read(ByteCounter counter) {
+		
+		DataBundle bundle = PipeToTextReader.readAllDatasets(input.getAbsolutePath());
+		
+		counter.bytes += input.length();
+		
+		return bundle;
+	}
+	
+	@Benchmark
+	public DataBundle roundTrip(ByteCounter counter) {
+		
+		writeTo(output);
+		
+		DataBundle bundle = PipeToTextReader.readAllDatasets(output.getAbsolutePath());
+		
+		counter.bytes += 2 * output.length();
+		
+		return bundle;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nom.bdezonia.zorbage.misc.DataBundle;
+
+/**
+ * Measures UcsfReader.readAllDatasets() on tiled 2d and 3d files.
+ * 
+ * @author Barry DeZonia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UcsfReadBenchmark {
+
+	@Param({"2d", "3d"})
+	public String layout;
+	
+	@Param({"64", "256", "512"})
+	public int side;
+	
+	@Param({"32"})
+	public int tile;
+	
+	private File file;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		
+		if (layout.equals("2d")) {
+			
+			file = BenchmarkData.ucsf(new int[] {side, side}, new int[] {tile, tile});
+		}
+		else {
+			
+			// keep the 3d cube near the size of the 2d plane
+			
+			int depth = Math.max(1, side / 16);
+			
+			file = BenchmarkData.ucsf(new int[] {depth, side, side}, new int[] {Math.min(depth, 8), tile, tile});
+		}
+	}
+	
+	@Benchmark
+	public DataBundle readAllDatasets(ByteCounter counter) {
+		
+		DataBundle bundle = UcsfReader.readAllDatasets(file.getAbsolutePath());
+		
+		counter.bytes += file.length();
+		
+		return bundle;
+	}
+}
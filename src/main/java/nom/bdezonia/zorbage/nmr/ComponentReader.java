@@ -0,0 +1,131 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import nom.bdezonia.zorbage.algebra.GetAsDoubleArray;
+import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
+import nom.bdezonia.zorbage.type.complex.float64.ComplexFloat64Member;
+import nom.bdezonia.zorbage.type.octonion.float32.OctonionFloat32Member;
+import nom.bdezonia.zorbage.type.octonion.float64.OctonionFloat64Member;
+import nom.bdezonia.zorbage.type.quaternion.float32.QuaternionFloat32Member;
+import nom.bdezonia.zorbage.type.quaternion.float64.QuaternionFloat64Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * Copies the leading (at most two) components of a value into a reusable
+ * double array. The common real and hypercomplex float types are read
+ * through their accessors so that no array is allocated per value. Other
+ * types fall back to getAsDoubleArray().
+ * 
+ * @author Barry DeZonia
+ */
+interface ComponentReader<U> {
+
+	/**
+	 * Copy the leading components of a value.
+	 * 
+	 * @param value The value to read.
+	 * @param out Where the components go. Must have a length of at least 2.
+	 * @return The number of components copied.
+	 */
+	int read(U value, double[] out);
+	
+	/**
+	 * Choose the cheapest reader for the runtime type of a sample value.
+	 */
+	static <U extends GetAsDoubleArray>
+	
+		ComponentReader<U> of(U sample)
+	{
+		if (sample instanceof Float32Member)
+			
+			return (value, out) -> { out[0] = ((Float32Member) value).v(); return 1; };
+		
+		if (sample instanceof Float64Member)
+			
+			return (value, out) -> { out[0] = ((Float64Member) value).v(); return 1; };
+		
+		if (sample instanceof ComplexFloat32Member)
+			
+			return (value, out) -> {
+				ComplexFloat32Member v = (ComplexFloat32Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		if (sample instanceof ComplexFloat64Member)
+			
+			return (value, out) -> {
+				ComplexFloat64Member v = (ComplexFloat64Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		if (sample instanceof QuaternionFloat32Member)
+			
+			return (value, out) -> {
+				QuaternionFloat32Member v = (QuaternionFloat32Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		if (sample instanceof QuaternionFloat64Member)
+			
+			return (value, out) -> {
+				QuaternionFloat64Member v = (QuaternionFloat64Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		if (sample instanceof OctonionFloat32Member)
+			
+			return (value, out) -> {
+				OctonionFloat32Member v = (OctonionFloat32Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		if (sample instanceof OctonionFloat64Member)
+			
+			return (value, out) -> {
+				OctonionFloat64Member v = (OctonionFloat64Member) value;
+				out[0] = v.r();
+				out[1] = v.i();
+				return 2;
+			};
+		
+		return (value, out) -> {
+			double[] values = value.getAsDoubleArray();
+			int count = Math.min(out.length, values.length);
+			System.arraycopy(values, 0, out, 0, count);
+			return count;
+		};
+	}
+}
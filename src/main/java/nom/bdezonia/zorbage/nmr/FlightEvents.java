@@ -0,0 +1,174 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the NMR readers and writers. Each event
+ * is timed from begin() to report(). When no recording is running (or
+ * an event type is disabled) report() does no more than a flag check.
+ * 
+ * @author Barry DeZonia
+ */
+final class FlightEvents {
+
+	// do not instantiate
+	
+	private FlightEvents() { }
+
+	@Name("nom.bdezonia.zorbage.nmr.FileOpened")
+	@Label("NMR File Opened")
+	@Description("An NMR data file was opened for reading or writing")
+	@Category({"Zorbage", "NMR"})
+	@StackTrace(false)
+	static final class FileOpened extends Event {
+		
+		@Label("Source")
+		String source;
+		
+		@Label("Format")
+		String format;
+		
+		@Label("File Size")
+		@DataAmount
+		long size;
+
+		void report(String source, String format, long size) {
+			
+			if (shouldCommit()) {
+				
+				this.source = source;
+				this.format = format;
+				this.size = size;
+				
+				commit();
+			}
+		}
+	}
+
+	@Name("nom.bdezonia.zorbage.nmr.HeaderParsed")
+	@Label("NMR Header Parsed")
+	@Description("The header of an NMR data file was read and checked")
+	@Category({"Zorbage", "NMR"})
+	@StackTrace(false)
+	static final class HeaderParsed extends Event {
+		
+		@Label("Source")
+		String source;
+		
+		@Label("Format")
+		String format;
+		
+		@Label("Bytes Read")
+		@DataAmount
+		long bytes;
+
+		void report(String source, String format, long bytes) {
+			
+			if (shouldCommit()) {
+				
+				this.source = source;
+				this.format = format;
+				this.bytes = bytes;
+				
+				commit();
+			}
+		}
+	}
+
+	@Name("nom.bdezonia.zorbage.nmr.BlockDecoded")
+	@Label("NMR Block Decoded")
+	@Description("A block of numeric values was read from an NMR data file")
+	@Category({"Zorbage", "NMR"})
+	@StackTrace(false)
+	static final class BlockDecoded extends Event {
+		
+		@Label("Source")
+		String source;
+		
+		@Label("Format")
+		String format;
+		
+		@Label("Bytes Read")
+		@DataAmount
+		long bytes;
+		
+		@Label("Values")
+		long values;
+
+		void report(String source, String format, long bytes, long values) {
+			
+			if (shouldCommit()) {
+				
+				this.source = source;
+				this.format = format;
+				this.bytes = bytes;
+				this.values = values;
+				
+				commit();
+			}
+		}
+	}
+
+	@Name("nom.bdezonia.zorbage.nmr.DatasetCompleted")
+	@Label("NMR Dataset Completed")
+	@Description("An NMR data set was completely read or written")
+	@Category({"Zorbage", "NMR"})
+	@StackTrace(false)
+	static final class DatasetCompleted extends Event {
+		
+		@Label("Source")
+		String source;
+		
+		@Label("Format")
+		String format;
+		
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		
+		@Label("Values")
+		long values;
+
+		void report(String source, String format, long bytes, long values) {
+			
+			if (shouldCommit()) {
+				
+				this.source = source;
+				this.format = format;
+				this.bytes = bytes;
+				this.values = values;
+				
+				commit();
+			}
+		}
+	}
+}
@@ -23,30 +23,479 @@
  */
 package nom.bdezonia.zorbage.nmr;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.algebra.GetAsDoubleArray;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
 import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.sampling.IntegerIndex;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.tuple.Tuple4;
 
 /**
+ * A command line tool for looking at, timing and converting NMR files.
+ * Files are recognized by their contents (see {@link NmrReader}) and
+ * directories are searched for files, leaving out the tool's own caches,
+ * sidecars and converted outputs. Files are worked on in parallel.
+ * 
  * @author Barry DeZonia
  */
 public class Main {
 	
+	private static final String USAGE =
+			"usage: Main <command> [options] <files or directories>\n" +
+			"commands:\n" +
+			"  header    print the header of each file\n" +
+			"  load      load each file and print its load time and throughput\n" +
+			"  convert   load each file and write it in another format\n" +
+			"options:\n" +
+			"  -threads <n>   the number of files to work on at once (default: the number of processors)\n" +
+			"  -out <dir>     where convert writes its files (default: next to each input file)\n" +
+			"  -to <format>   the format convert writes: text (default), npy (NumPy arrays with\n" +
+			"                 a ppm sidecar), ucsf (from nmrPipe files, streamed) or pipe\n" +
+			"                 (from UCSF files, streamed)\n" +
+			"  -cache         keep parsed text files in binary sidecars (see TextCache)";
+	
+	private static final double MB = 1024.0 * 1024.0;
+	
+	private static final List<String> OUTPUT_SUFFIXES = Arrays.asList(".txt", ".npy", ".ucsf", ".ft");
+	
+	// do not instantiate
+	
+	private Main() { }
+	
 	public static void main(String[] args) {
 		
-		// This one loads well. Should compare my results to what nmrDraw shows.
+		if (args.length < 2) {
+			
+			System.out.println(USAGE);
+			
+			System.exit(2);
+		}
+		
+		String command = args[0];
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		
+		String outDir = null;
+		
+		String toFormat = "text";
+		
+		List<String> names = new ArrayList<>();
+		
+		for (int i = 1; i < args.length; i++) {
+			
+			if (args[i].equals("-threads"))
+				
+				threads = (i+1 < args.length) ? count(args[++i]) : 0;
+			
+			else if (args[i].equals("-out"))
+				
+				outDir = value(args, ++i);
+			
+			else if (args[i].equals("-to"))
+				
+				toFormat = value(args, ++i);
+			
+			else if (args[i].equals("-cache"))
+				
+				TextCache.setEnabled(true);
+			
+			else
+				
+				names.add(args[i]);
+		}
+		
+		if (threads < 1 || names.isEmpty() ||
+				!(command.equals("header") || command.equals("load") || command.equals("convert")) ||
+				!(toFormat.equals("text") || toFormat.equals("npy") || toFormat.equals("ucsf") || toFormat.equals("pipe")))
+		{
+			System.out.println(USAGE);
+			
+			System.exit(2);
+		}
+		
+		List<Path> files = findFiles(names);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		
+		List<Future<Result>> results = new ArrayList<>();
+		
+		long start = System.nanoTime();
+		
+		for (Path file : files) {
+			
+			String out = outDir;
+			
+			String to = toFormat;
+			
+			results.add(pool.submit(() -> run(command, file, out, to)));
+		}
+		
+		pool.shutdown();
 		
-		String filename =
-//			"/home/bdezonia/dev/drift-fix/testdata/ayrshire/3D/010_NCOCX_50ms_80x100_part1.fid/NCOCX_part1.ft3";
-			"/home/bdz/testdata/images/ft2/2lgi/cc2d/CC50_experiment.ft2";
+		long bytes = 0;
 		
-		System.out.println("GOING TO READ FILE: "+filename);
+		int failures = 0;
 		
-		DataBundle files = NmrPipeReader.readAllDatasets(filename);
+		int skipped = 0;
 		
-		System.out.println();
+		// print in the order the files were given so runs can be compared
 		
-		System.out.println("number of data files returned = " + files.bundle().size());
+		for (Future<Result> future : results) {
+			
+			Result result;
+			
+			try {
+				
+				result = future.get();
+				
+			} catch (InterruptedException | ExecutionException e) {
+				
+				throw new IllegalStateException(e);
+			}
+			
+			System.out.print(result.text);
+			
+			bytes += result.bytes;
+			
+			if (result.failed) failures++;
+			
+			if (result.skipped) skipped++;
+		}
 		
-//		DimensionedDataSource<Float32Member> file = files.flts.get(0);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		System.out.printf("%d files (%d failed, %d skipped) %.1f MB in %.3f s on %d threads: %.1f MB/s%n",
+							files.size(), failures, skipped, bytes / MB, seconds, threads, bytes / MB / seconds);
+		
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	// an option given as the last argument has no value
+	
+	private static String value(String[] args, int i) {
+		
+		if (i >= args.length) {
+			
+			System.out.println(USAGE);
+			
+			System.exit(2);
+		}
+		
+		return args[i];
+	}
+	
+	// a bad count is returned as 0 so the caller prints the usage
+	
+	private static int count(String value) {
+		
+		try {
+			
+			return Integer.parseInt(value);
+			
+		} catch (NumberFormatException e) {
+			
+			return 0;
+		}
+	}
+	
+	private static class Result {
+		
+		String text;
+		long bytes;
+		boolean failed;
+		boolean skipped;
+	}
+	
+	private static List<Path> findFiles(List<String> names) {
+		
+		List<Path> files = new ArrayList<>();
+		
+		for (String name : names) {
+			
+			Path path = Paths.get(name);
+			
+			if (Files.isDirectory(path)) {
+				
+				try (Stream<Path> walk = Files.walk(path)) {
+					
+					List<Path> found = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+					
+					Set<String> foundNames = new HashSet<>();
+					
+					for (Path p : found) {
+						
+						foundNames.add(p.getFileName().toString());
+					}
+					
+					// leave out what earlier runs wrote so a rerun does not load its own output
+					
+					for (Path p : found) {
+						
+						if (!isOutput(p.getFileName().toString(), foundNames))
+							
+							files.add(p);
+					}
+					
+				} catch (IOException e) {
+					
+					throw new IllegalArgumentException("Could not search directory "+name+": "+e.getMessage());
+				}
+			}
+			else
+				
+				files.add(path);
+		}
+		
+		return files;
+	}
+	
+	// cache files and sidecars are always ours. converted files are named
+	//   after their input (a.ft -> a.ft.txt, a.ft.1.npy, a.ft.ucsf) so
+	//   they are only left out when a file of the input's name was found.
+	
+	private static boolean isOutput(String name, Set<String> foundNames) {
+		
+		if (name.endsWith(TextCache.SUFFIX) || name.endsWith(".ppm.json"))
+			
+			return true;
+		
+		// TextCache writes to a temp file before moving it into place
+		
+		if (name.contains(TextCache.SUFFIX) && name.endsWith(".tmp"))
+			
+			return true;
+		
+		int dot = name.lastIndexOf('.');
+		
+		if (dot <= 0 || !OUTPUT_SUFFIXES.contains(name.substring(dot)))
+			
+			return false;
+		
+		String input = name.substring(0, dot);
+		
+		if (foundNames.contains(input))
+			
+			return true;
+		
+		// the second and later data sets of a file get a number
+		
+		dot = input.lastIndexOf('.');
+		
+		if (dot <= 0 || !input.substring(dot + 1).matches("[0-9]+"))
+			
+			return false;
+		
+		return foundNames.contains(input.substring(0, dot));
+	}
+	
+	private static Result run(String command, Path file, String outDir, String toFormat) {
+		
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		
+		PrintStream out = new PrintStream(text);
+		
+		Result result = new Result();
+		
+		URI uri = file.toAbsolutePath().toUri();
+		
+		try {
+			
+			NmrReader.Format format;
+			
+			try {
+				
+				format = NmrReader.detect(uri);
+				
+			} catch (IllegalArgumentException e) {
+				
+				out.println(file + ": skipped: " + e.getMessage());
+				
+				result.skipped = true;
+				
+				return result;
+			}
+			
+			result.bytes = Files.size(file);
+			
+			String base = (outDir == null ? file.toString() : new File(outDir, file.getFileName().toString()).getPath());
+			
+			if (command.equals("header")) {
+				
+				out.println(file + ":");
+				
+				printHeader(uri, file, format, out);
+			}
+			else if (command.equals("convert") && (toFormat.equals("ucsf") || toFormat.equals("pipe"))) {
+				
+				long start = System.nanoTime();
+				
+				String written;
+				
+				if (toFormat.equals("ucsf") && format == NmrReader.Format.NMRPIPE) {
+					
+					written = base + ".ucsf";
+					
+					NmrPipeUcsfConverter.pipeToUcsf(file.toString(), written);
+				}
+				else if (toFormat.equals("pipe") && format == NmrReader.Format.UCSF) {
+					
+					written = base + ".ft";
+					
+					NmrPipeUcsfConverter.ucsfToPipe(file.toString(), written);
+				}
+				else
+					
+					throw new IllegalArgumentException(format + " files cannot be converted to " + toFormat);
+				
+				double seconds = (System.nanoTime() - start) / 1e9;
+				
+				out.printf("%s: %s %.1f MB converted in %.3f s: %.1f MB/s%n",
+							file, format, result.bytes / MB, seconds, result.bytes / MB / seconds);
+				
+				out.println("  wrote " + written);
+			}
+			else {
+				
+				long start = System.nanoTime();
+				
+				DataBundle bundle = NmrReader.readAllDatasets(uri);
+				
+				double seconds = (System.nanoTime() - start) / 1e9;
+				
+				long values = 0;
+				
+				for (Tuple2<Algebra<?,?>, DimensionedDataSource<?>> tuple : bundle.bundle()) {
+					
+					values += tuple.b().numElements();
+				}
+				
+				out.printf("%s: %s %.1f MB %d values in %.3f s: %.1f MB/s %.1f Mvalues/s%n",
+							file, format, result.bytes / MB, values, seconds,
+							result.bytes / MB / seconds, values / 1e6 / seconds);
+				
+				if (command.equals("convert")) {
+					
+					for (String written : writeAll(base, bundle, toFormat.equals("npy"))) {
+						
+						out.println("  wrote " + written);
+					}
+				}
+			}
+			
+		} catch (Exception e) {
+			
+			out.println(file + ": failed: " + e);
+			
+			result.failed = true;
+			
+		} finally {
+			
+			out.flush();
+			
+			result.text = text.toString();
+		}
+		
+		return result;
+	}
+	
+	private static void printHeader(URI uri, Path file, NmrReader.Format format, PrintStream out) {
+		
+		if (format == NmrReader.Format.NMRPIPE)
+			
+			NmrPipeReader.printHeader(uri, out);
+		
+		else if (format == NmrReader.Format.UCSF)
+			
+			UcsfReader.printHeader(uri, out);
+		
+		else {
+			
+			Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> metadata =
+					PipeToTextReader.readMetadata(file.toString());
+			
+			if (metadata == null)
+				
+				throw new IllegalArgumentException("Could not scan text file "+file);
+			
+			long[] dims = new long[metadata.a()];
+			
+			for (int i = 0; i < dims.length; i++) {
+				
+				dims[i] = metadata.d().get(i) - metadata.c().get(i) + 1;
+			}
+			
+			out.println("  format:       pipe2txt");
+			out.println("  dims:         " + Arrays.toString(dims));
+			out.println("  data columns: " + metadata.b());
+		}
+	}
+	
+	private static List<String> writeAll(String base, DataBundle bundle, boolean npy) throws IOException {
+		
+		// points are sized per data set and the writers build their values
+		//   from the algebra, so they would come out with no components
+		
+		if (!bundle.points.isEmpty())
+			
+			throw new IllegalArgumentException("text files with more than 8 data columns cannot be converted");
+		
+		List<String> names = new ArrayList<>();
+		
+		write(base, G.FLT, bundle.flts, names, npy);
+		write(base, G.CFLT, bundle.cflts, names, npy);
+		write(base, G.QFLT, bundle.qflts, names, npy);
+		write(base, G.OFLT, bundle.oflts, names, npy);
+		write(base, G.DBL, bundle.dbls, names, npy);
+		write(base, G.CDBL, bundle.cdbls, names, npy);
+		write(base, G.QDBL, bundle.qdbls, names, npy);
+		write(base, G.ODBL, bundle.odbls, names, npy);
+		
+		return names;
+	}
+	
+	private static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		void write(String base, T alg, List<DimensionedDataSource<U>> list, List<String> names, boolean npy)
+	
+			throws IOException
+	{
+		for (DimensionedDataSource<U> data : list) {
+			
+			String name = base + (names.isEmpty() ? "" : "." + names.size()) + (npy ? ".npy" : ".txt");
+			
+			// the batch is already parallel so each file is written on one thread
+			
+			if (npy)
+				
+				NpyWriter.writeNpy(name, alg, data);
+			
+			else
+				
+				PipeToTextWriter.write(name, alg, data, 1);
+			
+			names.add(name);
+		}
 	}
-
 }
@@ -0,0 +1,117 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import nom.bdezonia.zorbage.storage.coder.DoubleCoder;
+import nom.bdezonia.zorbage.storage.coder.FloatCoder;
+import nom.bdezonia.zorbage.storage.coder.ShortCoder;
+
+/**
+ * A limit on the memory a single read may allocate. Every reader works
+ * out the bytes its load will need from the file header (see the
+ * estimateBytes() methods of the readers) and calls check() before it
+ * allocates anything. Loads over the limit fail at once with a
+ * MemoryBudgetException instead of running out of memory part way.
+ * <p>
+ * There is no limit by default but loads that could never fit in the
+ * maximum heap size are always refused.
+ * 
+ * @author Barry DeZonia
+ */
+public final class MemoryBudget {
+
+	private static volatile long limit = Long.MAX_VALUE;
+	
+	// do not instantiate
+	
+	private MemoryBudget() { }
+
+	/**
+	 * Set the most bytes a single read may allocate.
+	 * 
+	 * @param bytes The limit. Long.MAX_VALUE removes the limit.
+	 */
+	public static void setLimit(long bytes) {
+		
+		if (bytes < 0)
+			
+			throw new IllegalArgumentException("memory budget cannot be negative");
+		
+		limit = bytes;
+	}
+
+	/**
+	 * The most bytes a single read may allocate.
+	 */
+	public static long limit() {
+		
+		return limit;
+	}
+
+	/**
+	 * Refuse a load that needs more memory than the budget allows or
+	 * more than the heap can ever hold.
+	 * 
+	 * @param source The file being loaded.
+	 * @param bytes The bytes the load needs.
+	 * @throws MemoryBudgetException if the load should not be attempted.
+	 */
+	public static void check(String source, long bytes) {
+		
+		long budget = limit;
+		
+		if (bytes > budget)
+			
+			throw new MemoryBudgetException(source, bytes, budget, "the memory budget");
+
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		
+		if (maxHeap != Long.MAX_VALUE && bytes > maxHeap)
+			
+			throw new MemoryBudgetException(source, bytes, maxHeap, "the maximum heap size");
+	}
+
+	/**
+	 * The bytes one value of a type takes in zorbage's array storage.
+	 * 
+	 * @param value An instance of the type.
+	 * @param componentCount The number of components of the type.
+	 */
+	static long bytesPerValue(Object value, int componentCount) {
+		
+		if (value instanceof DoubleCoder)
+			
+			return 8L * ((DoubleCoder) value).doubleCount();
+		
+		if (value instanceof FloatCoder)
+			
+			return 4L * ((FloatCoder) value).floatCount();
+		
+		if (value instanceof ShortCoder)
+			
+			return 2L * ((ShortCoder) value).shortCount();
+		
+		return 8L * componentCount;
+	}
+}
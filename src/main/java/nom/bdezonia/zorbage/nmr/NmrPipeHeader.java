@@ -0,0 +1,171 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import nom.bdezonia.zorbage.nmr.NmrPipeReader.NmrPipeFileReader;
+
+/**
+ * Builds the 2048 byte header of an nmrPipe file of processed (frequency
+ * domain) data. X is written as F2 and Y as F1 like nmrPipe does.
+ * 
+ * @author Barry DeZonia
+ */
+final class NmrPipeHeader {
+
+	// do not instantiate
+	
+	private NmrPipeHeader() { }
+
+	/**
+	 * Put a header at the start of a buffer. The buffer's byte order is
+	 * the byte order of the file. The buffer is left positioned after
+	 * the header.
+	 * 
+	 * @param buffer Receives the header.
+	 * @param dims The dimensions of the data in zorbage order.
+	 * @param complex True if X holds complex (real and imaginary) data.
+	 * @param stream True if 3d and 4d data is in one file rather than a series of plane files.
+	 * @param fileCount The number of files the data is stored in.
+	 * @param labels The label of each axis (in zorbage order).
+	 * @param obsFreqs The observe frequency (MHz) of each axis.
+	 * @param sweepWidths The sweep width (Hz) of each axis.
+	 * @param carriers The carrier position (ppm) of each axis.
+	 * @param title The title of the data.
+	 */
+	static void put(ByteBuffer buffer, long[] dims, boolean complex, boolean stream, int fileCount,
+						String[] labels, float[] obsFreqs, float[] sweepWidths, float[] carriers, String title)
+	{
+		float[] header = new float[NmrPipeReader.HEADER_ENTRIES];
+		
+		header[NmrPipeFileReader.FDFLTORDER] = 2.345f;
+		header[NmrPipeFileReader.FDDIMCOUNT] = dims.length;
+		header[NmrPipeFileReader.FDDIMORDER1] = 2;
+		header[NmrPipeFileReader.FDDIMORDER2] = 1;
+		header[NmrPipeFileReader.FDDIMORDER3] = 3;
+		header[NmrPipeFileReader.FDDIMORDER4] = 4;
+		header[NmrPipeFileReader.FDSIZE] = dims[0];
+		header[NmrPipeFileReader.FDREALSIZE] = dims[0];
+		header[NmrPipeFileReader.FDSPECNUM] = (dims.length > 1) ? dims[1] : 1;
+		header[NmrPipeFileReader.FDQUADFLAG] = complex ? 0 : 1;
+		header[NmrPipeFileReader.FDTRANSPOSED] = 0;
+		header[NmrPipeFileReader.FDPIPEFLAG] = stream ? 1 : 0;
+		header[NmrPipeFileReader.FDFILECOUNT] = fileCount;
+		
+		// X (F2)
+		
+		axis(header, 0, dims, obsFreqs, sweepWidths, carriers,
+				NmrPipeFileReader.FDF2OBS, NmrPipeFileReader.FDF2SW, NmrPipeFileReader.FDF2ORIG,
+				NmrPipeFileReader.FDF2CAR, NmrPipeFileReader.FDF2CENTER, NmrPipeFileReader.FDF2FTFLAG,
+				NmrPipeFileReader.FDF2FTSIZE, NmrPipeFileReader.FDF2TDSIZE);
+		header[NmrPipeFileReader.FDF2QUADFLAG] = complex ? 0 : 1;
+		
+		// Y (F1)
+		
+		axis(header, 1, dims, obsFreqs, sweepWidths, carriers,
+				NmrPipeFileReader.FDF1OBS, NmrPipeFileReader.FDF1SW, NmrPipeFileReader.FDF1ORIG,
+				NmrPipeFileReader.FDF1CAR, NmrPipeFileReader.FDF1CENTER, NmrPipeFileReader.FDF1FTFLAG,
+				NmrPipeFileReader.FDF1FTSIZE, NmrPipeFileReader.FDF1TDSIZE);
+		header[NmrPipeFileReader.FDF1QUADFLAG] = 1;
+		
+		// Z (F3)
+		
+		axis(header, 2, dims, obsFreqs, sweepWidths, carriers,
+				NmrPipeFileReader.FDF3OBS, NmrPipeFileReader.FDF3SW, NmrPipeFileReader.FDF3ORIG,
+				NmrPipeFileReader.FDF3CAR, NmrPipeFileReader.FDF3CENTER, NmrPipeFileReader.FDF3FTFLAG,
+				NmrPipeFileReader.FDF3FTSIZE, NmrPipeFileReader.FDF3TDSIZE);
+		header[NmrPipeFileReader.FDF3QUADFLAG] = 1;
+		header[NmrPipeFileReader.FDF3SIZE] = (dims.length > 2) ? dims[2] : 1;
+		
+		// A (F4)
+		
+		axis(header, 3, dims, obsFreqs, sweepWidths, carriers,
+				NmrPipeFileReader.FDF4OBS, NmrPipeFileReader.FDF4SW, NmrPipeFileReader.FDF4ORIG,
+				NmrPipeFileReader.FDF4CAR, NmrPipeFileReader.FDF4CENTER, NmrPipeFileReader.FDF4FTFLAG,
+				NmrPipeFileReader.FDF4FTSIZE, NmrPipeFileReader.FDF4TDSIZE);
+		header[NmrPipeFileReader.FDF4QUADFLAG] = 1;
+		header[NmrPipeFileReader.FDF4SIZE] = (dims.length > 3) ? dims[3] : 1;
+
+		buffer.clear();
+		
+		for (int i = 0; i < header.length; i++) {
+			
+			buffer.putFloat(header[i]);
+		}
+		
+		// the IEEE format marker is a bit pattern that reads the same in either byte order
+		
+		buffer.putInt(4 * NmrPipeFileReader.FDFLTFORMAT, 0xeeeeeeee);
+		
+		// labels are raw characters whatever the byte order
+		
+		int[] labelIndices = new int[] {
+				NmrPipeFileReader.FDF2LABEL, NmrPipeFileReader.FDF1LABEL,
+				NmrPipeFileReader.FDF3LABEL, NmrPipeFileReader.FDF4LABEL };
+		
+		for (int i = 0; i < labels.length && i < labelIndices.length; i++) {
+			
+			putChars(buffer, 4 * labelIndices[i], labels[i], 8);
+		}
+		
+		putChars(buffer, 4 * NmrPipeFileReader.FDTITLE, title, 60);
+	}
+	
+	// missing axes are written as size 1 with the values of the last given axis
+	
+	private static void axis(float[] header, int axis, long[] dims, float[] obsFreqs, float[] sweepWidths, float[] carriers,
+			int obsIdx, int swIdx, int origIdx, int carIdx, int centerIdx, int ftFlagIdx, int ftSizeIdx, int tdSizeIdx)
+	{
+		long size = (axis < dims.length) ? dims[axis] : 1;
+		
+		float obs = obsFreqs[Math.min(axis, obsFreqs.length - 1)];
+		
+		float sw = sweepWidths[Math.min(axis, sweepWidths.length - 1)];
+		
+		float car = carriers[Math.min(axis, carriers.length - 1)];
+		
+		long center = size / 2 + 1;
+		
+		header[obsIdx] = obs;
+		header[swIdx] = sw;
+		header[carIdx] = car;
+		header[centerIdx] = center;
+		header[origIdx] = car * obs - sw * (size - center) / size;
+		header[ftFlagIdx] = 1;
+		header[ftSizeIdx] = size;
+		header[tdSizeIdx] = size;
+	}
+	
+	private static void putChars(ByteBuffer buffer, int position, String s, int maxLength) {
+		
+		byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		
+		for (int i = 0; i < Math.min(bytes.length, maxLength); i++) {
+			
+			buffer.put(position + i, bytes[i]);
+		}
+	}
+}
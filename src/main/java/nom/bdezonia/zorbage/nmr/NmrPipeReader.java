@@ -28,13 +28,19 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
 import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
 import nom.bdezonia.zorbage.coordinates.LinearNdCoordinateSpace;
 import nom.bdezonia.zorbage.data.DimensionedDataSource;
@@ -46,7 +52,6 @@ import nom.bdezonia.zorbage.misc.DataSourceUtils;
 import nom.bdezonia.zorbage.sampling.IntegerIndex;
 import nom.bdezonia.zorbage.sampling.SamplingCartesianIntegerGrid;
 import nom.bdezonia.zorbage.sampling.SamplingIterator;
-import nom.bdezonia.zorbage.storage.Storage;
 import nom.bdezonia.zorbage.tuple.Tuple2;
 import nom.bdezonia.zorbage.tuple.Tuple5;
 import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
@@ -59,8 +64,22 @@ import nom.bdezonia.zorbage.type.real.float32.Float32Member;
  */
 public class NmrPipeReader {
 
-	private static int HEADER_ENTRIES = 512;   // 512 floats
-	private static int HEADER_BYTE_SIZE = HEADER_ENTRIES * 4;
+	static final int HEADER_ENTRIES = 512;   // 512 floats
+	static final int HEADER_BYTE_SIZE = HEADER_ENTRIES * 4;
+	
+	// the number of floats decoded between flight recorder block events
+	
+	private static final long DECODE_BLOCK = 1 << 20;
+	
+	// the bytes read at a time when the length of a non file source is measured
+	
+	private static final int LENGTH_PROBE_BLOCK = 1 << 20;
+	
+	// the number of floats converted from bytes at a time
+	
+	private static final int BULK_FLOATS = 1 << 14;
+	
+	private static final ReaderMetrics METRICS = ReaderMetrics.forReader(NmrPipeReader.class);
 	
 	// do not instantiate
 	
@@ -76,12 +95,96 @@ public class NmrPipeReader {
 		DataBundle
 		
 			readAllDatasets(String filename)
+	{
+		return readAllDatasets(filename, ReadListener.NONE);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener)
+	{
+		return readAllDatasets(filename, listener, new ReadProgress());
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(filename), new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and the conversion and can cancel them.
+	 * @param storage The kind of storage to load into. The 16-bit copy uses it too.
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(filename, listener, progress, storage), progress, storage);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress)
+	{
+		return readAllDatasets(filename, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage)
 	{
 		try {
 		
 			URI uri = new URI("file", null, new File(filename).getAbsolutePath(), null);
 			
-			return readAllDatasets(uri);
+			return readAllDatasets(uri, listener, progress, storage);
 	
 		} catch (URISyntaxException e) {
 			
@@ -100,62 +203,359 @@ public class NmrPipeReader {
 			
 			readAllDatasets(URI fileURI)
 	{
-		long numFloats = preprocessFile(fileURI);
+		return readAllDatasets(fileURI, ReadListener.NONE);
+	}
+
+	/**
+	 * 
+	 * @param fileURI
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+			
+			readAllDatasets(URI fileURI, ReadListener listener)
+	{
+		return readAllDatasets(fileURI, listener, new ReadProgress());
+	}
+
+	/**
+	 * 
+	 * @param fileURI
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+			
+			readAllDatasets(URI fileURI, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(fileURI), new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param fileURI
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and the conversion and can cancel them.
+	 * @param storage The kind of storage to load into. The 16-bit copy uses it too.
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(URI fileURI, ReadListener listener, ReadProgress progress, StorageConstruction storage, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(fileURI, listener, progress, storage), progress, storage);
+	}
+
+	/**
+	 * 
+	 * @param fileURI
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+			
+			readAllDatasets(URI fileURI, ReadListener listener, ReadProgress progress)
+	{
+		return readAllDatasets(fileURI, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param fileURI
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+			
+			readAllDatasets(URI fileURI, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		return readAllDatasets(fileURI, null, listener, progress, storage);
+	}
+
+	/**
+	 * Read a source the caller has already opened (see {@link NmrReader}).
+	 * 
+	 * @param fileURI
+	 * @param stream A stream at the start of the source or null to open it
+	 *   here. It is closed before returning.
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into.
+	 * @return
+	 */
+	static
+	
+		DataBundle
+			
+			readAllDatasets(URI fileURI, InputStream stream, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		String source = fileURI.toString();
+		
+		FlightEvents.DatasetCompleted completed = new FlightEvents.DatasetCompleted();
+		
+		completed.begin();
+		
+		long start = System.nanoTime();
 		
-		DataBundle bundle = new DataBundle();
+		// a file's length comes from the file system so its stream is kept
+		//   for the data. Other sources are measured by reading them through.
+		
+		boolean local = "file".equals(fileURI.getScheme());
+		
+		try {
+			
+			long numFloats = preprocessFile(fileURI, local ? null : stream, listener, progress);
+		
+			progress.begin(4 * numFloats);
+			
+			DataBundle bundle = new DataBundle();
 
-		Tuple5<String, Integer, long[], IndexedDataSource<Float32Member>, MetaDataStore>
+			Tuple5<String, Integer, long[], IndexedDataSource<Float32Member>, MetaDataStore>
 		
-			data = readFloats(fileURI, numFloats);
+				data = readFloats(fileURI, local ? stream : null, numFloats, listener, progress, storage);
 
-		if (data.a().equals("real")) {
+			if (data.a().equals("real")) {
 
-			NdData<Float32Member> nd = realDataSource(data.b(), data.c(), data.d(), data.e());
+				NdData<Float32Member> nd = realDataSource(data.b(), data.c(), data.d(), data.e(), source, listener);
 
-			nd.setSource(fileURI.toString());
+				nd.setSource(fileURI.toString());
 			
-			bundle.flts.add(nd);
-		}
-		else if (data.a().equals("complex")) {
+				bundle.flts.add(nd);
+			}
+			else if (data.a().equals("complex")) {
 			
-			NdData<ComplexFloat32Member> nd = complexDataSource(data.b(), data.c(), data.d(), data.e());
+				NdData<ComplexFloat32Member> nd = complexDataSource(data.b(), data.c(), data.d(), data.e(), source, listener, storage);
 
-			nd.setSource(fileURI.toString());
+				nd.setSource(fileURI.toString());
 			
-			bundle.cflts.add(nd);
-		}
-		else
-			throw new IllegalArgumentException("Unsupported output data type: "+data.a());
+				bundle.cflts.add(nd);
+			}
+			else
+				throw new IllegalArgumentException("Unsupported output data type: "+data.a());
 		
-		return bundle;
+			completed.report(source, "nmrPipe", HEADER_BYTE_SIZE + 4 * numFloats, numFloats);
+			
+			METRICS.succeeded(HEADER_BYTE_SIZE + 4 * numFloats, numFloats, System.nanoTime() - start);
+			
+			return bundle;
+			
+		} catch (CancellationException e) {
+			
+			throw e;
+			
+		} catch (RuntimeException e) {
+			
+			METRICS.failed();
+			
+			throw e;
+			
+		} finally {
+			
+			if (stream != null)
+				
+				try { stream.close(); } catch (IOException e) { ; }
+		}
 	}
 	
 	/**
+	 * Calculate the bytes of memory reading a file will allocate. This
+	 * includes the float values read from the file and, for complex
+	 * data, the complex copy made from them. Only the header is read.
 	 * 
-	 * @param fileURI
+	 * @param filename
 	 * @return
 	 */
-	private static
+	public static
 	
 		long
 		
-			preprocessFile(URI fileURI)
+			estimateBytes(String filename)
 	{
 		try {
 			
-			InputStream is = fileURI.toURL().openStream();
+			URI uri = new URI("file", null, new File(filename).getAbsolutePath(), null);
+			
+			return estimateBytes(uri);
+	
+		} catch (URISyntaxException e) {
 			
-			if (is == null) {
+			throw new IllegalArgumentException("Bad name for file: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Calculate the bytes of memory reading a file will allocate. This
+	 * includes the float values read from the file and, for complex
+	 * data, the complex copy made from them. Only the header is read.
+	 * 
+	 * @param fileURI
+	 * @return
+	 */
+	public static
+	
+		long
+		
+			estimateBytes(URI fileURI)
+	{
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(fileURI.toURL().openStream()))) {
+			
+			NmrPipeFileReader reader = new NmrPipeFileReader();
+			
+			reader.readHeader(dis);
+			
+			long numFloats = 1;
+			
+			for (long dim : reader.findDims()) {
 				
-				throw new IllegalArgumentException("Data not found: "+fileURI);
+				numFloats *= dim;
 			}
 			
-			long fileLength = 0;
+			return storageBytes(numFloats, reader.findDataType().a());
 			
-			while (is.read() != -1) fileLength++;
+		} catch (IOException e) {
 			
-			is.close();
+			throw new IllegalArgumentException("Error: "+e.getMessage());
+		}
+	}
 
+	/**
+	 * Print the main values of a file's header. Only the header is read.
+	 * 
+	 * @param fileURI
+	 * @param out
+	 */
+	static void printHeader(URI fileURI, PrintStream out) {
+		
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(fileURI.toURL().openStream()))) {
+			
+			NmrPipeFileReader reader = new NmrPipeFileReader();
+			
+			reader.readHeader(dis);
+			
+			long[] dims = reader.findDims();
+			
+			out.println("  format:     nmrPipe");
+			out.println("  byte order: " + (reader.byteSwapNeeded ? "little endian" : "big endian"));
+			out.println("  data type:  " + reader.findDataType().a());
+			out.println("  dims:       " + Arrays.toString(dims));
+			out.println("  scale:      " + reader.scale());
+			out.println("  title:      " + reader.title());
+			out.println("  comment:    " + reader.comment());
+			out.println("  user:       " + reader.userName());
+			out.println("  created:    " + reader.creationYear() + "-" + reader.creationMonth() + "-" + reader.creationDay() +
+							" " + reader.creationHour() + ":" + reader.creationMinute() + ":" + reader.creationSecond());
+			
+			for (int i = 0; i < dims.length; i++) {
+				out.println("  dim " + i + ": label " + reader.dimLabel(i) + ", unit " + reader.unit(i) +
+								", sweep width " + reader.sweepWidth(i) + ", obs freq " + reader.obsFreq(i) +
+								", offset " + reader.offset(i));
+			}
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("Error: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * The bytes a load allocates: 4 per float read plus 8 per complex
+	 * value when the floats are combined into complex data.
+	 * 
+	 * @param numFloats
+	 * @param dataType
+	 * @return
+	 */
+	private static
+	
+		long
+		
+			storageBytes(long numFloats, String dataType)
+	{
+		long bytes = 4 * numFloats;
+		
+		if (dataType.equals("complex"))
+			
+			bytes += 8 * (numFloats / 2);
+		
+		return bytes;
+	}
+	
+	/**
+	 * 
+	 * @param fileURI
+	 * @param stream The open source or null to open it here. Used only for non file sources.
+	 * @param listener
+	 * @param progress
+	 * @return
+	 */
+	private static
+	
+		long
+		
+			preprocessFile(URI fileURI, InputStream stream, ReadListener listener, ReadProgress progress)
+	{
+		try {
+			
+			long start = System.nanoTime();
+			
+			long fileLength = 0;
+			
+			if ("file".equals(fileURI.getScheme())) {
+				
+				File file = new File(fileURI);
+				
+				if (!file.isFile()) {
+					
+					throw new IllegalArgumentException("Data not found: "+fileURI);
+				}
+				
+				fileLength = file.length();
+				
+				progress.check();
+			}
+			else {
+				
+				// other sources can only be measured by reading them through
+				
+				progress.begin(-1);
+				
+				try (InputStream is = (stream != null) ? stream : fileURI.toURL().openStream()) {
+					
+					if (is == null) {
+						
+						throw new IllegalArgumentException("Data not found: "+fileURI);
+					}
+					
+					byte[] block = new byte[LENGTH_PROBE_BLOCK];
+					
+					int count;
+					
+					while ((count = is.readNBytes(block, 0, block.length)) > 0) {
+						
+						fileLength += count;
+						
+						progress.advance(count);
+					}
+				}
+			}
 			
 			if (fileLength < HEADER_BYTE_SIZE) {
 				
@@ -169,6 +569,9 @@ public class NmrPipeReader {
 			
 			long numFloats = (fileLength - HEADER_BYTE_SIZE) / 4;
 
+			listener.phaseCompleted(fileURI.toString(), ReadListener.Phase.LENGTH_PROBE,
+										System.nanoTime() - start, fileLength, 0);
+			
 			return numFloats;
 
 		} catch (IOException e) {
@@ -180,7 +583,11 @@ public class NmrPipeReader {
 	/**
 	 * 
 	 * @param fileURI
+	 * @param stream The open source or null to open it here.
 	 * @param numFloats
+	 * @param listener
+	 * @param progress
+	 * @param storage
 	 * @return
 	 */
 	private static
@@ -188,11 +595,10 @@ public class NmrPipeReader {
 		Tuple5<String, Integer, long[], IndexedDataSource<Float32Member>,
 				MetaDataStore>
 	
-			readFloats(URI fileURI, long numFloats)
+			readFloats(URI fileURI, InputStream stream, long numFloats, ReadListener listener, ReadProgress progress, StorageConstruction storage)
 	{
-		IndexedDataSource<Float32Member> data =
-				Storage.allocate(G.FLT.construct(), numFloats);
-
+		String source = fileURI.toString();
+		
 		InputStream is = null;
 
 		BufferedInputStream bis = null;
@@ -201,27 +607,78 @@ public class NmrPipeReader {
 		
 		try {
 			
-			is = fileURI.toURL().openStream();
+			FlightEvents.FileOpened opened = new FlightEvents.FileOpened();
+			
+			opened.begin();
+			
+			is = (stream != null) ? stream : fileURI.toURL().openStream();
 
 			bis = new BufferedInputStream(is);
 
 			dis = new DataInputStream(bis);
 
+			opened.report(source, "nmrPipe", HEADER_BYTE_SIZE + 4 * numFloats);
+			
 			NmrPipeFileReader reader = new NmrPipeFileReader();
 
+			long start = System.nanoTime();
+			
+			FlightEvents.HeaderParsed parsed = new FlightEvents.HeaderParsed();
+			
+			parsed.begin();
+			
 			reader.readHeader(dis);
 			
+			parsed.report(source, "nmrPipe", HEADER_BYTE_SIZE);
+			
+			listener.phaseCompleted(source, ReadListener.Phase.HEADER, System.nanoTime() - start, HEADER_BYTE_SIZE, 0);
+			
+			// refuse oversized loads before allocating anything
+			
+			ReaderStorage.checkBudget(source, storage, storageBytes(numFloats, reader.findDataType().a()));
+			
+			IndexedDataSource<Float32Member> data =
+					ReaderStorage.allocate(storage, G.FLT.construct(), numFloats);
+
+			start = System.nanoTime();
+			
 			Float32Member type = G.FLT.construct();
 			
-			for (long i = 0; i < numFloats; i++) {
+			byte[] bytes = new byte[4 * BULK_FLOATS];
 			
-				float val = reader.nextDataFloat(dis);
+			float[] floats = new float[BULK_FLOATS];
+			
+			for (long first = 0; first < numFloats; first += DECODE_BLOCK) {
+				
+				long last = Math.min(numFloats, first + DECODE_BLOCK);
+				
+				FlightEvents.BlockDecoded block = new FlightEvents.BlockDecoded();
+				
+				block.begin();
+				
+				for (long i = first; i < last; i += BULK_FLOATS) {
+				
+					int count = (int) Math.min(BULK_FLOATS, last - i);
+					
+					reader.nextDataFloats(dis, bytes, floats, count);
+					
+					for (int k = 0; k < count; k++) {
+						
+						type.setV(floats[k]);
+					
+						data.set(i + k, type);
+					}
+				}
 				
-				type.setV(val);
+				block.report(source, "nmrPipe", 4 * (last - first), last - first);
 				
-				data.set(i, type);
+				progress.advance(4 * (last - first));
 			}
 
+			listener.phaseCompleted(source, ReadListener.Phase.DECODE, System.nanoTime() - start, 4 * numFloats, numFloats);
+			
+			start = System.nanoTime();
+			
 			long[] dims = reader.findDims();
 			
 			Tuple2<String,Integer> dataType = reader.findDataType();
@@ -239,6 +696,7 @@ public class NmrPipeReader {
 			metadata.putInt("creation hour", reader.creationHour());
 			metadata.putInt("creation minute", reader.creationMinute());
 			metadata.putInt("creation second", reader.creationSecond());
+			metadata.putFloat("scale", reader.scale());
 			
 			for (int i = 0; i < 4; i++) {
 				metadata.putString("dim " + i + " label",  reader.dimLabel(i));
@@ -248,6 +706,8 @@ public class NmrPipeReader {
 				metadata.putFloat( "dim " + i + " obs freq",    reader.obsFreq(i));
 			}
 			
+			listener.phaseCompleted(source, ReadListener.Phase.METADATA, System.nanoTime() - start, 0, 0);
+			
 			return new Tuple5<>(dataType.a(), dataType.b(), dims, data, metadata);
 			
 		} catch (IOException e) {
@@ -277,13 +737,16 @@ public class NmrPipeReader {
 	 * @param rawDims
 	 * @param numbers
 	 * @param metadata
+	 * @param source
+	 * @param listener
 	 * @return
 	 */
 	private static
 	
 		NdData<Float32Member>
 	
-			realDataSource(int numComponents, long[] rawDims, IndexedDataSource<Float32Member> numbers, MetaDataStore metadata)
+			realDataSource(int numComponents, long[] rawDims, IndexedDataSource<Float32Member> numbers, MetaDataStore metadata,
+								String source, ReadListener listener)
 	{
 		if (numComponents != 1 || (numbers.size() % numComponents) != 0)
 			throw new IllegalArgumentException("suspicious input to real data source allocation routine");
@@ -305,10 +768,18 @@ public class NmrPipeReader {
 		
 		nd.metadata().merge(metadata);
 
+		long start = System.nanoTime();
+		
 		flipAroundY(G.FLT, nd);
 		
+		listener.phaseCompleted(source, ReadListener.Phase.FLIP, System.nanoTime() - start, 0, numbers.size());
+		
+		start = System.nanoTime();
+		
 		setUnitsEtc(nd);
 		
+		listener.phaseCompleted(source, ReadListener.Phase.COORDINATE_SPACE, System.nanoTime() - start, 0, 0);
+		
 		return nd;
 	}
 	
@@ -318,20 +789,26 @@ public class NmrPipeReader {
 	 * @param rawDims
 	 * @param numbers
 	 * @param metadata
+	 * @param source
+	 * @param listener
+	 * @param storage
 	 * @return
 	 */
 	private static
 	
 		NdData<ComplexFloat32Member>
 	
-			complexDataSource(int numComponents, long[] rawDims, IndexedDataSource<Float32Member> numbers, MetaDataStore metadata)
+			complexDataSource(int numComponents, long[] rawDims, IndexedDataSource<Float32Member> numbers, MetaDataStore metadata,
+								String source, ReadListener listener, StorageConstruction storage)
 	{
 		if (numComponents != 2 || (numbers.size() % 2) != 0)
 			throw new IllegalArgumentException("suspicious input to complex data source allocation routine");
 
+		long start = System.nanoTime();
+		
 		IndexedDataSource<ComplexFloat32Member> complexes =
 				
-				Storage.allocate(G.CFLT.construct(), numbers.size() / 2);
+				ReaderStorage.allocate(storage, G.CFLT.construct(), numbers.size() / 2);
 		
 		ComplexFloat32Member complex = G.CFLT.construct();
 		
@@ -408,14 +885,24 @@ public class NmrPipeReader {
 			throw new IllegalArgumentException("complex 3d or 4d case not yet implemented");
 		}
 		
+		listener.phaseCompleted(source, ReadListener.Phase.DEINTERLEAVE, System.nanoTime() - start, 0, complexes.size());
+		
 		NdData<ComplexFloat32Member> nd = new NdData<>(dims, complexes);
 		
 		nd.metadata().merge(metadata);
 		
+		start = System.nanoTime();
+		
 		flipAroundY(G.CFLT, nd);
 		
+		listener.phaseCompleted(source, ReadListener.Phase.FLIP, System.nanoTime() - start, 0, complexes.size());
+		
+		start = System.nanoTime();
+		
 		setUnitsEtc(nd);
 		
+		listener.phaseCompleted(source, ReadListener.Phase.COORDINATE_SPACE, System.nanoTime() - start, 0, 0);
+		
 		return nd;
 	}
 
@@ -426,7 +913,7 @@ public class NmrPipeReader {
 	 * @param algebra
 	 * @param data
 	 */
-	private static
+	static
 	
 		<T extends Algebra<T,U>,
 			U>
@@ -589,6 +1076,14 @@ public class NmrPipeReader {
 			byteSwapNeeded =  Math.abs(headerVal - 2.345f) > 1e-6;
 		}
 		
+		/**
+		 * The byte order of the header and data values.
+		 */
+		ByteOrder byteOrder() {
+			
+			return byteSwapNeeded ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		}
+		
 		/**
 		 * 
 		 * @param index
@@ -626,6 +1121,24 @@ public class NmrPipeReader {
 			return Float.intBitsToFloat(bits);
 		}
 
+		/**
+		 * Read a run of data floats with a single bulk read.
+		 * 
+		 * @param dis
+		 * @param bytes Scratch space of at least 4 * count bytes.
+		 * @param floats Receives the values.
+		 * @param count The number of floats to read.
+		 * @throws IOException
+		 */
+		void nextDataFloats(DataInputStream dis, byte[] bytes, float[] floats, int count) throws IOException {
+			
+			dis.readFully(bytes, 0, 4 * count);
+			
+			ByteOrder order = byteSwapNeeded ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			
+			ByteBuffer.wrap(bytes, 0, 4 * count).order(order).asFloatBuffer().get(floats, 0, count);
+		}
+
 		/**
 		 * 
 		 * @param bits
@@ -663,7 +1176,7 @@ public class NmrPipeReader {
 		 * 
 		 * @return
 		 */
-		private Tuple2<String,Integer> findDataType() {
+		Tuple2<String,Integer> findDataType() {
 		
 			int dimCount = dimCount();
 			
@@ -722,7 +1235,7 @@ public class NmrPipeReader {
 		 * 
 		 * @return
 		 */
-		private long[] findDims() {
+		long[] findDims() {
 			
 			int dimCount = dimCount();
 			
@@ -2346,229 +2859,229 @@ public class NmrPipeReader {
 
 		// Find nrmpipe .c/.h code to verify all the formats I think exist
 		
-	    final int FDMAGIC = 0;
-	    final int FDFLTFORMAT = 1;
-	    final int FDFLTORDER = 2;
-	    final int FDID = 3;
+	    static final int FDMAGIC = 0;
+	    static final int FDFLTFORMAT = 1;
+	    static final int FDFLTORDER = 2;
+	    static final int FDID = 3;
 	    // 4-8 = ?
-	    final int FDDIMCOUNT = 9;
-	    final int FDF3OBS = 10;
-	    final int FDF3SW = 11;
-	    final int FDF3ORIG = 12;  // NDORIG is in hz so maybe this is too
-	    final int FDF3FTFLAG = 13;
-	    final int FDPLANELOC = 14;
-	    final int FDF3SIZE = 15;
-	    final int FDF2LABEL = 16; // and 17: 8 ascii chars
-	    final int FDF1LABEL = 18; // and 19: 8 ascii chars
-	    final int FDF3LABEL = 20; // and 21: 8 ascii chars
-	    final int FDF4LABEL = 22; // and 23: 8 ascii chars
-	    final int FDDIMORDER1 = 24;
-	    final int FDDIMORDER2 = 25;
-	    final int FDDIMORDER3 = 26;
-	    final int FDDIMORDER4 = 27;
-	    final int FDF4OBS = 28;
-	    final int FDF4SW = 29;
-	    final int FDF4ORIG = 30;  // NDORIG is in hz so maybe this is too
-	    final int FDF4FTFLAG = 31;
-	    final int FDF4SIZE = 32;
+	    static final int FDDIMCOUNT = 9;
+	    static final int FDF3OBS = 10;
+	    static final int FDF3SW = 11;
+	    static final int FDF3ORIG = 12;  // NDORIG is in hz so maybe this is too
+	    static final int FDF3FTFLAG = 13;
+	    static final int FDPLANELOC = 14;
+	    static final int FDF3SIZE = 15;
+	    static final int FDF2LABEL = 16; // and 17: 8 ascii chars
+	    static final int FDF1LABEL = 18; // and 19: 8 ascii chars
+	    static final int FDF3LABEL = 20; // and 21: 8 ascii chars
+	    static final int FDF4LABEL = 22; // and 23: 8 ascii chars
+	    static final int FDDIMORDER1 = 24;
+	    static final int FDDIMORDER2 = 25;
+	    static final int FDDIMORDER3 = 26;
+	    static final int FDDIMORDER4 = 27;
+	    static final int FDF4OBS = 28;
+	    static final int FDF4SW = 29;
+	    static final int FDF4ORIG = 30;  // NDORIG is in hz so maybe this is too
+	    static final int FDF4FTFLAG = 31;
+	    static final int FDF4SIZE = 32;
 	    // 33-39 = ?
-	    final int FDDMXVAL = 40;
-	    final int FDDMXFLAG = 41;
-	    final int FDDELTATR = 42;
+	    static final int FDDMXVAL = 40;
+	    static final int FDDMXFLAG = 41;
+	    static final int FDDELTATR = 42;
 	    // 43-44 = ?
-	    final int FDNUSDIM = 45;
+	    static final int FDNUSDIM = 45;
 	    // 46-49 = ?
-	    final int FDF3APOD = 50;
-	    final int FDF3QUADFLAG = 51;
+	    static final int FDF3APOD = 50;
+	    static final int FDF3QUADFLAG = 51;
 	    // 52 = ?
-	    final int FDF4APOD = 53;
-	    final int FDF4QUADFLAG = 54;
-	    final int FDF1QUADFLAG = 55;
-	    final int FDF2QUADFLAG = 56;
-	    final int FDPIPEFLAG = 57;
-	    final int FDF3UNITS = 58;  // obsolete
-	    final int FDF4UNITS = 59;  // obsolete
-	    final int FDF3P0 = 60;
-	    final int FDF3P1 = 61;
-	    final int FDF4P0 = 62;
-	    final int FDF4P1 = 63;
-	    final int FDF2AQSIGN = 64;
-	    final int FDPARTITION = 65;
-	    final int FDF2CAR = 66;
-	    final int FDF1CAR = 67;
-	    final int FDF3CAR = 68;
-	    final int FDF4CAR = 69;
-	    final int FDUSER1 = 70;
-	    final int FDUSER2 = 71;
-	    final int FDUSER3 = 72;
-	    final int FDUSER4 = 73;
-	    final int FDUSER5 = 74;
-	    final int FDPIPECOUNT = 75;
-	    final int FDUSER6 = 76;
-	    final int FDFIRSTPLANE = 77;
-	    final int FDLASTPLANE = 78;
-	    final int FDF2CENTER = 79;
-	    final int FDF1CENTER = 80;
-	    final int FDF3CENTER = 81;
-	    final int FDF4CENTER = 82;
+	    static final int FDF4APOD = 53;
+	    static final int FDF4QUADFLAG = 54;
+	    static final int FDF1QUADFLAG = 55;
+	    static final int FDF2QUADFLAG = 56;
+	    static final int FDPIPEFLAG = 57;
+	    static final int FDF3UNITS = 58;  // obsolete
+	    static final int FDF4UNITS = 59;  // obsolete
+	    static final int FDF3P0 = 60;
+	    static final int FDF3P1 = 61;
+	    static final int FDF4P0 = 62;
+	    static final int FDF4P1 = 63;
+	    static final int FDF2AQSIGN = 64;
+	    static final int FDPARTITION = 65;
+	    static final int FDF2CAR = 66;
+	    static final int FDF1CAR = 67;
+	    static final int FDF3CAR = 68;
+	    static final int FDF4CAR = 69;
+	    static final int FDUSER1 = 70;
+	    static final int FDUSER2 = 71;
+	    static final int FDUSER3 = 72;
+	    static final int FDUSER4 = 73;
+	    static final int FDUSER5 = 74;
+	    static final int FDPIPECOUNT = 75;
+	    static final int FDUSER6 = 76;
+	    static final int FDFIRSTPLANE = 77;
+	    static final int FDLASTPLANE = 78;
+	    static final int FDF2CENTER = 79;
+	    static final int FDF1CENTER = 80;
+	    static final int FDF3CENTER = 81;
+	    static final int FDF4CENTER = 82;
 	    // 83-94 = ?
-	    final int FDF2APOD = 95;
-	    final int FDF2FTSIZE = 96;
-	    final int FDREALSIZE = 97;
-	    final int FDF1FTSIZE = 98;
-	    final int FDSIZE = 99;
-	    final int FDF2SW = 100;
-	    final int FDF2ORIG = 101;  // NDORIG is in hz so maybe this is too
+	    static final int FDF2APOD = 95;
+	    static final int FDF2FTSIZE = 96;
+	    static final int FDREALSIZE = 97;
+	    static final int FDF1FTSIZE = 98;
+	    static final int FDSIZE = 99;
+	    static final int FDF2SW = 100;
+	    static final int FDF2ORIG = 101;  // NDORIG is in hz so maybe this is too
 	    // 102-105 = ?
-	    final int FDQUADFLAG = 106;
+	    static final int FDQUADFLAG = 106;
 	    // 107 = ?
-	    final int FDF2ZF = 108;
-	    final int FDF2P0 = 109;
-	    final int FDF2P1 = 110;
-	    final int FDF2LB = 111;
+	    static final int FDF2ZF = 108;
+	    static final int FDF2P0 = 109;
+	    static final int FDF2P1 = 110;
+	    static final int FDF2LB = 111;
 	    // 112-118 = ?
-	    final int FDF2OBS = 119;
+	    static final int FDF2OBS = 119;
 	    // 120-134 = ?
-	    final int FDMCFLAG = 135;
-	    final int FDF2UNITS = 152;  // obsolete
-	    final int FDNOISE = 153;
+	    static final int FDMCFLAG = 135;
+	    static final int FDF2UNITS = 152;  // obsolete
+	    static final int FDNOISE = 153;
 	    // 154-156 = ?
-	    final int FDTEMPERATURE = 157;
-	    final int FDPRESSURE = 158;
+	    static final int FDTEMPERATURE = 157;
+	    static final int FDPRESSURE = 158;
 	    // 159-179 = ?
-	    final int FDRANK = 180;
+	    static final int FDRANK = 180;
 	    // 181-198 = ?
-	    final int FDTAU = 199;
-	    final int FDF3FTSIZE = 200;
-	    final int FDF4FTSIZE = 201;
+	    static final int FDTAU = 199;
+	    static final int FDF3FTSIZE = 200;
+	    static final int FDF4FTSIZE = 201;
 	    // 202-217 = ?
-	    final int FDF1OBS = 218;
-	    final int FDSPECNUM = 219;
-	    final int FDF2FTFLAG = 220;
-	    final int FDTRANSPOSED = 221;
-	    final int FDF1FTFLAG = 222;
+	    static final int FDF1OBS = 218;
+	    static final int FDSPECNUM = 219;
+	    static final int FDF2FTFLAG = 220;
+	    static final int FDTRANSPOSED = 221;
+	    static final int FDF1FTFLAG = 222;
 	    // 223-228 = ?
-	    final int FDF1SW = 229;
+	    static final int FDF1SW = 229;
 	    // 230-233 = ?
-	    final int FDF1UNITS = 234;  // obsolete
+	    static final int FDF1UNITS = 234;  // obsolete
 	    // 235-242 = ?
-	    final int FDF1LB = 243;
+	    static final int FDF1LB = 243;
 	    // 244 = ?
-	    final int FDF1P0 = 245;
-	    final int FDF1P1 = 246;
-	    final int FDMAX = 247;
-	    final int FDMIN = 248;
-	    final int FDF1ORIG = 249;  // NDORIG is in hz so maybe this is too
-	    final int FDSCALEFLAG = 250;
-	    final int FDDISPMAX = 251;
-	    final int FDDISPMIN = 252;
-	    final int FDPTHRESH = 253;
-	    final int FDNTHRESH = 254;
+	    static final int FDF1P0 = 245;
+	    static final int FDF1P1 = 246;
+	    static final int FDMAX = 247;
+	    static final int FDMIN = 248;
+	    static final int FDF1ORIG = 249;  // NDORIG is in hz so maybe this is too
+	    static final int FDSCALEFLAG = 250;
+	    static final int FDDISPMAX = 251;
+	    static final int FDDISPMIN = 252;
+	    static final int FDPTHRESH = 253;
+	    static final int FDNTHRESH = 254;
 	    // 255 = ?
-	    final int FD2DPHASE = 256;
-	    final int FDF2X1 = 257;
-	    final int FDF2XN = 258;
-	    final int FDF1X1 = 259;
-	    final int FDF1XN = 260;
-	    final int FDF3X1 = 261;
-	    final int FDF3XN = 262;
-	    final int FDF4X1 = 263;
-	    final int FDF4XN = 264;
+	    static final int FD2DPHASE = 256;
+	    static final int FDF2X1 = 257;
+	    static final int FDF2XN = 258;
+	    static final int FDF1X1 = 259;
+	    static final int FDF1XN = 260;
+	    static final int FDF3X1 = 261;
+	    static final int FDF3XN = 262;
+	    static final int FDF4X1 = 263;
+	    static final int FDF4XN = 264;
 	    // 265 = ?
-	    final int FDDOMINFO = 266;
-	    final int FDMETHINFO = 267;
+	    static final int FDDOMINFO = 266;
+	    static final int FDMETHINFO = 267;
 	    // 268-282 = ?
-	    final int FDHOURS = 283;
-	    final int FDMINS = 284;
-	    final int FDSECS = 285;
-	    final int FDSRCNAME = 286; // and 287 and 288 and 289: 16 ascii chars
-	    final int FDUSERNAME = 290; // and 291 and 292 and 293: 16 ascii chars
-	    final int FDMONTH = 294;
-	    final int FDDAY = 295;
-	    final int FDYEAR = 296;
-	    final int FDTITLE = 297;  // through 311: 60 ascii chars
-	    final int FDCOMMENT = 312; // through 351: 160 ascii chars
+	    static final int FDHOURS = 283;
+	    static final int FDMINS = 284;
+	    static final int FDSECS = 285;
+	    static final int FDSRCNAME = 286; // and 287 and 288 and 289: 16 ascii chars
+	    static final int FDUSERNAME = 290; // and 291 and 292 and 293: 16 ascii chars
+	    static final int FDMONTH = 294;
+	    static final int FDDAY = 295;
+	    static final int FDYEAR = 296;
+	    static final int FDTITLE = 297;  // through 311: 60 ascii chars
+	    static final int FDCOMMENT = 312; // through 351: 160 ascii chars
 	    // 352-358 = ?
-	    final int FDLASTBLOCK = 359;
-	    final int FDCONTBLOCK = 360;
-	    final int FDBASEBLOCK = 361;
-	    final int FDPEAKBLOCK = 362;
-	    final int FDBMAPBLOCK = 363;
-	    final int FDHISTBLOCK = 364;
-	    final int FD1DBLOCK = 365;
+	    static final int FDLASTBLOCK = 359;
+	    static final int FDCONTBLOCK = 360;
+	    static final int FDBASEBLOCK = 361;
+	    static final int FDPEAKBLOCK = 362;
+	    static final int FDBMAPBLOCK = 363;
+	    static final int FDHISTBLOCK = 364;
+	    static final int FD1DBLOCK = 365;
 	    // 366-369 = ?
-	    final int FDSCORE = 370;
-	    final int FDSCANS = 371;
-	    final int FDF3LB = 372;
-	    final int FDF4LB = 373;
-	    final int FDF2GB = 374;
-	    final int FDF1GB = 375;
-	    final int FDF3GB = 376;
-	    final int FDF4GB = 377;
-	    final int FDF2OBSMID = 378;
-	    final int FDF1OBSMID = 379;
-	    final int FDF3OBSMID = 380;
-	    final int FDF4OBSMID = 381;
-	    final int FDF2GOFF = 382;
-	    final int FDF1GOFF = 383;
-	    final int FDF3GOFF = 384;
-	    final int FDF4GOFF = 385;
-	    final int FDF2TDSIZE = 386;
-	    final int FDF1TDSIZE = 387;
-	    final int FDF3TDSIZE = 388;
-	    final int FDF4TDSIZE = 389;
-	    final int FD2DVIRGIN = 399;
-	    final int FDF3APODCODE = 400;
-	    final int FDF3APODQ1 = 401;
-	    final int FDF3APODQ2 = 402;
-	    final int FDF3APODQ3 = 403;
-	    final int FDF3C1 = 404;
-	    final int FDF4APODCODE = 405;
-	    final int FDF4APODQ1 = 406;
-	    final int FDF4APODQ2 = 407;
-	    final int FDF4APODQ3 = 408;
-	    final int FDF4C1 = 409;
+	    static final int FDSCORE = 370;
+	    static final int FDSCANS = 371;
+	    static final int FDF3LB = 372;
+	    static final int FDF4LB = 373;
+	    static final int FDF2GB = 374;
+	    static final int FDF1GB = 375;
+	    static final int FDF3GB = 376;
+	    static final int FDF4GB = 377;
+	    static final int FDF2OBSMID = 378;
+	    static final int FDF1OBSMID = 379;
+	    static final int FDF3OBSMID = 380;
+	    static final int FDF4OBSMID = 381;
+	    static final int FDF2GOFF = 382;
+	    static final int FDF1GOFF = 383;
+	    static final int FDF3GOFF = 384;
+	    static final int FDF4GOFF = 385;
+	    static final int FDF2TDSIZE = 386;
+	    static final int FDF1TDSIZE = 387;
+	    static final int FDF3TDSIZE = 388;
+	    static final int FDF4TDSIZE = 389;
+	    static final int FD2DVIRGIN = 399;
+	    static final int FDF3APODCODE = 400;
+	    static final int FDF3APODQ1 = 401;
+	    static final int FDF3APODQ2 = 402;
+	    static final int FDF3APODQ3 = 403;
+	    static final int FDF3C1 = 404;
+	    static final int FDF4APODCODE = 405;
+	    static final int FDF4APODQ1 = 406;
+	    static final int FDF4APODQ2 = 407;
+	    static final int FDF4APODQ3 = 408;
+	    static final int FDF4C1 = 409;
 	    // 410-412 = ?
-	    final int FDF2APODCODE = 413;
-	    final int FDF1APODCODE = 414;
-	    final int FDF2APODQ1 = 415;
-	    final int FDF2APODQ2 = 416;
-	    final int FDF2APODQ3 = 417;
-	    final int FDF2C1 = 418;
-	    final int FDF2APODDF = 419;
-	    final int FDF1APODQ1 = 420;
-	    final int FDF1APODQ2 = 421;
-	    final int FDF1APODQ3 = 422;
-	    final int FDF1C1 = 423;
+	    static final int FDF2APODCODE = 413;
+	    static final int FDF1APODCODE = 414;
+	    static final int FDF2APODQ1 = 415;
+	    static final int FDF2APODQ2 = 416;
+	    static final int FDF2APODQ3 = 417;
+	    static final int FDF2C1 = 418;
+	    static final int FDF2APODDF = 419;
+	    static final int FDF1APODQ1 = 420;
+	    static final int FDF1APODQ2 = 421;
+	    static final int FDF1APODQ3 = 422;
+	    static final int FDF1C1 = 423;
 	    // 424-427 = ?
-	    final int FDF1APOD = 428;
+	    static final int FDF1APOD = 428;
 	    // 429-436 = ?
-	    final int FDF1ZF = 437;
-	    final int FDF3ZF = 438;
-	    final int FDF4ZF = 439;
+	    static final int FDF1ZF = 437;
+	    static final int FDF3ZF = 438;
+	    static final int FDF4ZF = 439;
 	    // 440-441 = ?
-	    final int FDFILECOUNT = 442;
-	    final int FDSLICECOUNT0 = 443;
-	    final int FDTHREADCOUNT = 444;
-	    final int FDTHREADID = 445;
-	    final int FDSLICECOUNT1 = 446;
-	    final int FDCUBEFLAG = 447;
+	    static final int FDFILECOUNT = 442;
+	    static final int FDSLICECOUNT0 = 443;
+	    static final int FDTHREADCOUNT = 444;
+	    static final int FDTHREADID = 445;
+	    static final int FDSLICECOUNT1 = 446;
+	    static final int FDCUBEFLAG = 447;
 	    // 448-463 = ?
-	    final int FDOPERNAME = 464; // through 471: 32 ascii chars
+	    static final int FDOPERNAME = 464; // through 471: 32 ascii chars
 	    // 472-474 = ?
-	    final int FDF1AQSIGN = 475;
-	    final int FDF3AQSIGN = 476;
-	    final int FDF4AQSIGN = 477;
-	    final int FDSCALE = 478;
+	    static final int FDF1AQSIGN = 475;
+	    static final int FDF3AQSIGN = 476;
+	    static final int FDF4AQSIGN = 477;
+	    static final int FDSCALE = 478;
 	    // 479 = ?
-	    final int FDF2OFFPPM = 480;  // NDOFFPPM says this: "Additional PPM offset (for alignment)."
-	    final int FDF1OFFPPM = 481;
-	    final int FDF3OFFPPM = 482;
-	    final int FDF4OFFPPM = 483;
+	    static final int FDF2OFFPPM = 480;  // NDOFFPPM says this: "Additional PPM offset (for alignment)."
+	    static final int FDF1OFFPPM = 481;
+	    static final int FDF3OFFPPM = 482;
+	    static final int FDF4OFFPPM = 483;
 	    // 484-511 = ?
 	}
 	
-	private static class PipeSpace implements CoordinateSpace {
+	static class PipeSpace implements CoordinateSpace {
 
 		private final DimensionedDataSource<?> data;
 		
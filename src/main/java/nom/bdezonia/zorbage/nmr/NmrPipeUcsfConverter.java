@@ -0,0 +1,655 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import nom.bdezonia.zorbage.nmr.NmrPipeReader.NmrPipeFileReader;
+
+/**
+ * Converts between nmrPipe and UCSF (Sparky) files without loading the
+ * whole data set. Only one row of tiles is held in memory at a time so
+ * the memory a conversion takes does not depend upon the size of the
+ * files.
+ * <p>
+ * Both formats store the Y axis in the same direction (reversed from
+ * zorbage order, see the readers) so rows are copied between them as is.
+ * 
+ * @author Barry DeZonia
+ */
+public final class NmrPipeUcsfConverter {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	// the default number of floats in a UCSF tile (32 KB)
+	
+	private static final int TILE_FLOATS = 8192;
+	
+	private static final int UCSF_HEADER_BYTES = 180;
+	
+	private static final int UCSF_AXIS_BYTES = 128;
+	
+	// do not instantiate
+	
+	private NmrPipeUcsfConverter() { }
+	
+	/**
+	 * Convert a real valued nmrPipe file into a UCSF file with tiles of
+	 * about 32 KB.
+	 * 
+	 * @param pipeFilename The nmrPipe file. 3d and 4d data must be in a single stream file.
+	 * @param ucsfFilename The UCSF file to write.
+	 * @throws IOException
+	 */
+	public static void pipeToUcsf(String pipeFilename, String ucsfFilename) throws IOException {
+		
+		pipeToUcsf(pipeFilename, ucsfFilename, null);
+	}
+	
+	/**
+	 * Convert a real valued nmrPipe file into a UCSF file. The memory
+	 * used is about one row of tiles: the product of the tile sizes of
+	 * every dimension but X times the X size.
+	 * 
+	 * @param pipeFilename The nmrPipe file. 3d and 4d data must be in a single stream file.
+	 * @param ucsfFilename The UCSF file to write.
+	 * @param tileSizes The tile size along each dimension (in zorbage
+	 *   order) or null to choose tiles of about 32 KB.
+	 * @throws IOException
+	 */
+	public static void pipeToUcsf(String pipeFilename, String ucsfFilename, int[] tileSizes) throws IOException {
+		
+		NmrPipeFileReader reader = new NmrPipeFileReader();
+		
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(pipeFilename)))) {
+			
+			reader.readHeader(dis);
+		}
+		
+		if (!reader.findDataType().a().equals("real"))
+			
+			throw new IllegalArgumentException("only real valued nmrPipe data can be converted to UCSF");
+		
+		long[] dims = reader.findDims();
+		
+		int n = dims.length;
+		
+		if (tileSizes == null)
+			
+			tileSizes = defaultTileSizes(dims);
+		
+		if (tileSizes.length != n)
+			
+			throw new IllegalArgumentException("one tile size is needed per dimension");
+		
+		long numFloats = 1;
+		
+		for (int d = 0; d < n; d++) {
+			
+			if (tileSizes[d] < 1)
+				
+				throw new IllegalArgumentException("tile sizes must be positive");
+			
+			numFloats *= dims[d];
+		}
+		
+		if (dims[0] > Integer.MAX_VALUE)
+			
+			throw new IllegalArgumentException("X dimension is too large to convert: "+dims[0]);
+		
+		// UCSF axes are stored slowest first: header axis h is zorbage dimension n-1-h
+		
+		long[] sizes = new long[n];
+		
+		int[] tiles = new int[n];
+		
+		long[] tileCounts = new long[n];
+		
+		for (int h = 0; h < n; h++) {
+			
+			sizes[h] = dims[n - 1 - h];
+			
+			tiles[h] = (int) Math.min(tileSizes[n - 1 - h], sizes[h]);
+			
+			tileCounts[h] = (sizes[h] + tiles[h] - 1) / tiles[h];
+		}
+		
+		int xSize = (int) dims[0];
+		
+		int xTile = tiles[n - 1];
+		
+		int ySize = (n > 1) ? (int) dims[1] : 1;
+		
+		int yTile = (n > 1) ? tiles[n - 2] : 1;
+		
+		int rowsPerTile = 1;
+		
+		for (int h = 0; h < n - 1; h++) {
+			
+			rowsPerTile *= tiles[h];
+		}
+		
+		if ((long) rowsPerTile * xSize > Integer.MAX_VALUE)
+			
+			throw new IllegalArgumentException("tiles are too large to convert this file");
+		
+		// one row of tiles: every X for each row of a tile
+		
+		MemoryBudget.check(pipeFilename, 4L * rowsPerTile * xSize);
+		
+		float[] rows = new float[rowsPerTile * xSize];
+		
+		try (FileChannel in = FileChannel.open(Paths.get(pipeFilename), StandardOpenOption.READ);
+				FileChannel out = create(ucsfFilename))
+		{
+			if (in.size() != NmrPipeReader.HEADER_BYTE_SIZE + 4 * numFloats)
+				
+				throw new IllegalArgumentException("nmrPipe file size does not match its header: "+pipeFilename);
+			
+			ByteBuffer outBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			
+			ByteBuffer inBuffer = ByteBuffer.allocate(4 * yTile * xSize).order(reader.byteOrder());
+			
+			ucsfHeader(outBuffer, reader, dims, tiles);
+			
+			long numGroups = 1;
+			
+			for (int h = 0; h < n - 1; h++) {
+				
+				numGroups *= tileCounts[h];
+			}
+			
+			long[] tile = new long[n];
+			
+			long[] offset = new long[n];
+			
+			for (long g = 0; g < numGroups; g++) {
+				
+				// gather the nmrPipe rows the tiles of this group cover. Rows
+				//   that differ only in Y are next to each other in the file.
+				
+				for (int h = 0; h < n - 1; h++) {
+					
+					offset[h] = 0;
+				}
+				
+				for (int r = 0; r < rowsPerTile; r += yTile) {
+					
+					boolean inBounds = true;
+					
+					long planeRow = 0;
+					
+					for (int h = 0; h < n - 2; h++) {
+						
+						long pos = tile[h] * tiles[h] + offset[h];
+						
+						if (pos >= sizes[h])
+							
+							inBounds = false;
+						
+						planeRow = planeRow * sizes[h] + pos;
+					}
+					
+					long y0 = (n > 1) ? tile[n - 2] * yTile : 0;
+					
+					int numRows = inBounds ? (int) Math.min(yTile, ySize - y0) : 0;
+					
+					if (numRows > 0)
+						
+						readRows(in, inBuffer, NmrPipeReader.HEADER_BYTE_SIZE + 4L * xSize * (planeRow * ySize + y0),
+									numRows * xSize, rows, r * xSize);
+					
+					// pad the parts of edge tiles that lie outside the data
+					
+					Arrays.fill(rows, (r + numRows) * xSize, (r + yTile) * xSize, 0);
+					
+					increment(offset, tiles, n - 2);
+				}
+				
+				// write every tile along X
+				
+				for (long tx = 0; tx < tileCounts[n - 1]; tx++) {
+					
+					int x0 = (int) (tx * xTile);
+					
+					int count = Math.min(xTile, xSize - x0);
+					
+					for (int r = 0; r < rowsPerTile; r++) {
+						
+						int base = r * xSize + x0;
+						
+						for (int i = 0; i < xTile; i++) {
+							
+							if (outBuffer.remaining() < 4)
+								
+								drain(out, outBuffer);
+							
+							outBuffer.putFloat(i < count ? rows[base + i] : 0);
+						}
+					}
+				}
+				
+				increment(tile, tileCounts, n - 1);
+			}
+			
+			drain(out, outBuffer);
+		}
+	}
+	
+	/**
+	 * Convert a real valued UCSF file into a big endian nmrPipe file. 3d
+	 * and 4d data is written as a single stream file.
+	 * 
+	 * @param ucsfFilename The UCSF file.
+	 * @param pipeFilename The nmrPipe file to write.
+	 * @throws IOException
+	 */
+	public static void ucsfToPipe(String ucsfFilename, String pipeFilename) throws IOException {
+		
+		ucsfToPipe(ucsfFilename, pipeFilename, ByteOrder.BIG_ENDIAN);
+	}
+	
+	/**
+	 * Convert a real valued UCSF file into an nmrPipe file. 3d and 4d
+	 * data is written as a single stream file. The memory used is about
+	 * one row of tiles: the product of the tile sizes of every dimension
+	 * but X times the X size.
+	 * 
+	 * @param ucsfFilename The UCSF file.
+	 * @param pipeFilename The nmrPipe file to write.
+	 * @param order The byte order of the nmrPipe file.
+	 * @throws IOException
+	 */
+	public static void ucsfToPipe(String ucsfFilename, String pipeFilename, ByteOrder order) throws IOException {
+		
+		UcsfReader.HeaderInfo info;
+		
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(ucsfFilename)))) {
+			
+			info = UcsfReader.readHeader(dis);
+		}
+		
+		if (info == null)
+			
+			throw new IllegalArgumentException("Not a readable UCSF file: "+ucsfFilename);
+		
+		if (info.dimCount < 1 || info.dimCount > 4)
+			
+			throw new IllegalArgumentException("Unexpected number of dimensions ("+info.dimCount+")");
+		
+		if (info.componentCount != 1)
+			
+			throw new IllegalArgumentException("only real valued UCSF data can be converted to nmrPipe");
+		
+		int n = info.dimCount;
+		
+		// header axis h is zorbage dimension n-1-h
+		
+		long[] sizes = new long[n];
+		
+		int[] tiles = new int[n];
+		
+		long[] tileCounts = new long[n];
+		
+		long[] dims = new long[n];
+		
+		String[] labels = new String[n];
+		
+		float[] obsFreqs = new float[n];
+		
+		float[] sweepWidths = new float[n];
+		
+		float[] carriers = new float[n];
+		
+		long numTiles = 1;
+		
+		for (int h = 0; h < n; h++) {
+			
+			UcsfReader.AxisHeader axis = info.axisHeaders[h];
+			
+			if (axis.dataPtCount < 1 || axis.tileSize < 1)
+				
+				throw new IllegalArgumentException("UCSF axis "+h+" has a bad size or tile size");
+			
+			sizes[h] = axis.dataPtCount;
+			
+			tiles[h] = axis.tileSize;
+			
+			tileCounts[h] = axis.tileCount;
+			
+			numTiles *= tileCounts[h];
+			
+			int d = n - 1 - h;
+			
+			dims[d] = axis.dataPtCount;
+			
+			labels[d] = axis.atomName;
+			
+			obsFreqs[d] = axis.spectrometerFrequency;
+			
+			sweepWidths[d] = axis.spectralWidth;
+			
+			carriers[d] = axis.transmitterOffset;
+		}
+		
+		int xSize = (int) dims[0];
+		
+		int xTile = tiles[n - 1];
+		
+		int ySize = (n > 1) ? (int) dims[1] : 1;
+		
+		int yTile = (n > 1) ? tiles[n - 2] : 1;
+		
+		int rowsPerTile = 1;
+		
+		for (int h = 0; h < n - 1; h++) {
+			
+			rowsPerTile *= tiles[h];
+		}
+		
+		int tileFloats = rowsPerTile * xTile;
+		
+		if ((long) rowsPerTile * xSize > Integer.MAX_VALUE || (long) rowsPerTile * xTile > Integer.MAX_VALUE)
+			
+			throw new IllegalArgumentException("tiles are too large to convert this file");
+		
+		long headerBytes = UCSF_HEADER_BYTES + UCSF_AXIS_BYTES * n;
+		
+		// one row of tiles reordered into rows plus one tile as read
+		
+		MemoryBudget.check(ucsfFilename, 4L * rowsPerTile * xSize + 8L * tileFloats);
+		
+		float[] rows = new float[rowsPerTile * xSize];
+		
+		float[] tileValues = new float[tileFloats];
+		
+		try (FileChannel in = FileChannel.open(Paths.get(ucsfFilename), StandardOpenOption.READ);
+				FileChannel out = create(pipeFilename))
+		{
+			if (in.size() < headerBytes + 4L * tileFloats * numTiles)
+				
+				throw new IllegalArgumentException("UCSF file is shorter than its header says: "+ucsfFilename);
+			
+			ByteBuffer inBuffer = ByteBuffer.allocate(4 * tileFloats).order(ByteOrder.BIG_ENDIAN);
+			
+			ByteBuffer outBuffer = ByteBuffer.allocate(Math.max(4 * NmrPipeReader.HEADER_ENTRIES, 4 * yTile * xSize)).order(order);
+			
+			NmrPipeHeader.put(outBuffer, dims, false, n > 2, 1, labels, obsFreqs, sweepWidths, carriers, info.comment);
+			
+			outBuffer.flip();
+			
+			while (outBuffer.hasRemaining()) {
+				
+				out.write(outBuffer);
+			}
+			
+			long numGroups = numTiles / tileCounts[n - 1];
+			
+			long[] tile = new long[n];
+			
+			long[] offset = new long[n];
+			
+			long position = headerBytes;
+			
+			for (long g = 0; g < numGroups; g++) {
+				
+				// reorder every tile along X into rows
+				
+				for (long tx = 0; tx < tileCounts[n - 1]; tx++) {
+					
+					readRows(in, inBuffer, position, tileFloats, tileValues, 0);
+					
+					position += 4L * tileFloats;
+					
+					int x0 = (int) (tx * xTile);
+					
+					int count = Math.min(xTile, xSize - x0);
+					
+					for (int r = 0; r < rowsPerTile; r++) {
+						
+						System.arraycopy(tileValues, r * xTile, rows, r * xSize + x0, count);
+					}
+				}
+				
+				// write the rows that lie inside the data. Rows that differ
+				//   only in Y are next to each other in the nmrPipe file.
+				
+				for (int h = 0; h < n - 1; h++) {
+					
+					offset[h] = 0;
+				}
+				
+				for (int r = 0; r < rowsPerTile; r += yTile) {
+					
+					boolean inBounds = true;
+					
+					long planeRow = 0;
+					
+					for (int h = 0; h < n - 2; h++) {
+						
+						long pos = tile[h] * tiles[h] + offset[h];
+						
+						if (pos >= sizes[h])
+							
+							inBounds = false;
+						
+						planeRow = planeRow * sizes[h] + pos;
+					}
+					
+					long y0 = (n > 1) ? tile[n - 2] * yTile : 0;
+					
+					int numRows = inBounds ? (int) Math.min(yTile, ySize - y0) : 0;
+					
+					if (numRows > 0)
+						
+						writeRows(out, outBuffer, NmrPipeReader.HEADER_BYTE_SIZE + 4L * xSize * (planeRow * ySize + y0),
+									numRows * xSize, rows, r * xSize);
+					
+					increment(offset, tiles, n - 2);
+				}
+				
+				increment(tile, tileCounts, n - 1);
+			}
+		}
+	}
+	
+	// double the smallest tile side until tiles hold about TILE_FLOATS floats
+	
+	private static int[] defaultTileSizes(long[] dims) {
+		
+		int[] tiles = new int[dims.length];
+		
+		long total = 1;
+		
+		for (int d = 0; d < dims.length; d++) {
+			
+			tiles[d] = 1;
+		}
+		
+		while (true) {
+			
+			int smallest = -1;
+			
+			for (int d = 0; d < dims.length; d++) {
+				
+				if (tiles[d] < dims[d] && (smallest < 0 || tiles[d] < tiles[smallest]))
+					
+					smallest = d;
+			}
+			
+			if (smallest < 0)
+				
+				return tiles;
+			
+			int bigger = (int) Math.min(2L * tiles[smallest], dims[smallest]);
+			
+			long newTotal = total / tiles[smallest] * bigger;
+			
+			if (newTotal > TILE_FLOATS)
+				
+				return tiles;
+			
+			tiles[smallest] = bigger;
+			
+			total = newTotal;
+		}
+	}
+	
+	private static void ucsfHeader(ByteBuffer buffer, NmrPipeFileReader reader, long[] dims, int[] tiles) {
+		
+		int n = dims.length;
+		
+		buffer.clear();
+		
+		putChars(buffer, 0, "UCSF NMR", 10);
+		
+		buffer.position(10);
+		buffer.put((byte) n);
+		buffer.put((byte) 1);  // component count
+		buffer.put((byte) 0);  // encoding
+		buffer.put((byte) 2);  // file version
+		
+		putChars(buffer, 14, reader.userName(), 9);
+		putChars(buffer, 49, reader.title(), 80);
+		
+		for (int h = 0; h < n; h++) {
+			
+			int axis = n - 1 - h;
+			
+			int base = UCSF_HEADER_BYTES + UCSF_AXIS_BYTES * h;
+			
+			putChars(buffer, base, reader.dimLabel(axis), 6);
+			
+			buffer.putInt(base + 8, (int) dims[axis]);
+			buffer.putInt(base + 16, tiles[h]);
+			buffer.putFloat(base + 20, reader.obsFreq(axis));
+			buffer.putFloat(base + 24, reader.sweepWidth(axis));
+			buffer.putFloat(base + 28, reader.carrierPositionPPM(axis));
+		}
+		
+		buffer.position(UCSF_HEADER_BYTES + UCSF_AXIS_BYTES * n);
+	}
+	
+	// read count floats from a file position into an array
+	
+	private static void readRows(FileChannel channel, ByteBuffer buffer, long position, int count, float[] values, int offset)
+			throws IOException
+	{
+		buffer.clear();
+		
+		buffer.limit(4 * count);
+		
+		while (buffer.hasRemaining()) {
+			
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				
+				throw new IOException("unexpected end of file");
+		}
+		
+		buffer.flip();
+		
+		buffer.asFloatBuffer().get(values, offset, count);
+	}
+	
+	// write count floats from an array to a file position
+	
+	private static void writeRows(FileChannel channel, ByteBuffer buffer, long position, int count, float[] values, int offset)
+			throws IOException
+	{
+		buffer.clear();
+		
+		buffer.asFloatBuffer().put(values, offset, count);
+		
+		buffer.limit(4 * count);
+		
+		while (buffer.hasRemaining()) {
+			
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+	
+	// count up a multidimensional counter with the last position fastest
+	
+	private static void increment(long[] counter, int[] limits, int length) {
+		
+		for (int i = length - 1; i >= 0; i--) {
+			
+			if (++counter[i] < limits[i])
+				
+				return;
+			
+			counter[i] = 0;
+		}
+	}
+	
+	private static void increment(long[] counter, long[] limits, int length) {
+		
+		for (int i = length - 1; i >= 0; i--) {
+			
+			if (++counter[i] < limits[i])
+				
+				return;
+			
+			counter[i] = 0;
+		}
+	}
+	
+	private static void putChars(ByteBuffer buffer, int position, String s, int maxLength) {
+		
+		byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		
+		for (int i = 0; i < Math.min(bytes.length, maxLength); i++) {
+			
+			buffer.put(position + i, bytes[i]);
+		}
+	}
+	
+	private static FileChannel create(String filename) throws IOException {
+		
+		return FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+	
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		
+		buffer.flip();
+		
+		while (buffer.hasRemaining()) {
+			
+			channel.write(buffer);
+		}
+		
+		buffer.clear();
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
+import nom.bdezonia.zorbage.misc.DataBundle;
+
+/**
+ * Reads any of the NMR file formats this library supports. The format is
+ * found from the first bytes of the file rather than its name so files
+ * with missing or misleading extensions load with the right reader.
+ * The nmrPipe and UCSF readers are handed the stream the first bytes
+ * were read from so the source is only opened once.
+ * 
+ * @author Barry DeZonia
+ */
+public final class NmrReader {
+
+	/**
+	 * The file formats NmrReader can recognize.
+	 */
+	public enum Format {
+		
+		/** Binary nmrPipe data (read by {@link NmrPipeReader}). */
+		NMRPIPE,
+		
+		/** UCSF (Sparky) data (read by {@link UcsfReader}). */
+		UCSF,
+		
+		/** Text from nmrPipe's pipe2txt (read by {@link PipeToTextReader}). */
+		PIPE_TO_TEXT
+	}
+	
+	// enough bytes to see a few text lines or the start of any binary header
+	
+	private static final int PEEK_BYTES = 512;
+	
+	// do not instantiate
+	
+	private NmrReader() { }
+	
+	/**
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename)
+	{
+		return readAllDatasets(toUri(filename));
+	}
+	
+	/**
+	 * 
+	 * @param fileURI
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(URI fileURI)
+	{
+		return readAllDatasets(fileURI, ReadListener.NONE, new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+	
+	/**
+	 * 
+	 * @param fileURI
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(URI fileURI, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		InputStream is = open(fileURI);
+		
+		try {
+			
+			switch (detect(fileURI, peek(is))) {
+			
+			case NMRPIPE:
+				
+				return NmrPipeReader.readAllDatasets(fileURI, is, listener, progress, storage);
+				
+			case UCSF:
+				
+				return UcsfReader.readAllDatasets(fileURI, is, listener, progress, storage);
+				
+			default:
+				
+				// the text reader scans the file several times by name
+				
+				is.close();
+				
+				return PipeToTextReader.readAllDatasets(localPath(fileURI), listener, progress, storage);
+			}
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException reading "+fileURI+": "+e.getMessage());
+			
+		} finally {
+			
+			try { is.close(); } catch (IOException e) { ; }
+		}
+	}
+	
+	/**
+	 * Find the format of a file from its first few hundred bytes.
+	 * 
+	 * @param filename
+	 * @return
+	 * @throws IllegalArgumentException if the file is not in a known format.
+	 */
+	public static Format detect(String filename) {
+		
+		return detect(toUri(filename));
+	}
+	
+	/**
+	 * Find the format of a file from its first few hundred bytes.
+	 * 
+	 * @param fileURI
+	 * @return
+	 * @throws IllegalArgumentException if the file is not in a known format.
+	 */
+	public static Format detect(URI fileURI) {
+		
+		try (InputStream is = open(fileURI)) {
+			
+			return detect(fileURI, peek(is));
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException reading "+fileURI+": "+e.getMessage());
+		}
+	}
+	
+	private static InputStream open(URI fileURI) {
+		
+		try {
+			
+			return new BufferedInputStream(fileURI.toURL().openStream());
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException reading "+fileURI+": "+e.getMessage());
+		}
+	}
+	
+	// read the first bytes and rewind so a reader can start from the top
+	
+	private static byte[] peek(InputStream is) throws IOException {
+		
+		is.mark(PEEK_BYTES);
+		
+		byte[] bytes = is.readNBytes(PEEK_BYTES);
+		
+		is.reset();
+		
+		return bytes;
+	}
+	
+	private static Format detect(URI fileURI, byte[] bytes) {
+		
+		if (isUcsf(bytes))
+			
+			return Format.UCSF;
+		
+		if (isNmrPipe(bytes))
+			
+			return Format.NMRPIPE;
+		
+		// compressed text can only be told apart by its name
+		
+		if ("file".equals(fileURI.getScheme()) && TextCodecs.forFilename(fileURI.getPath()) != null)
+			
+			return Format.PIPE_TO_TEXT;
+		
+		if (isNumericText(bytes))
+			
+			return Format.PIPE_TO_TEXT;
+		
+		throw new IllegalArgumentException("Unrecognized NMR file format: "+fileURI);
+	}
+	
+	private static boolean isUcsf(byte[] bytes) {
+		
+		return bytes.length >= 8 &&
+				new String(bytes, 0, 8, StandardCharsets.US_ASCII).equals("UCSF NMR");
+	}
+	
+	// FDMAGIC is a zero int and FDFLTORDER is 2.345 in one byte order or the other
+	
+	private static boolean isNmrPipe(byte[] bytes) {
+		
+		if (bytes.length < 4 * NmrPipeReader.NmrPipeFileReader.FDFLTORDER + 4)
+			
+			return false;
+		
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		
+		if (buffer.getInt(4 * NmrPipeReader.NmrPipeFileReader.FDMAGIC) != 0)
+			
+			return false;
+		
+		for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			
+			float fltOrder = buffer.order(order).getFloat(4 * NmrPipeReader.NmrPipeFileReader.FDFLTORDER);
+			
+			if (Math.abs(fltOrder - 2.345f) <= 1e-6)
+				
+				return true;
+		}
+		
+		return false;
+	}
+	
+	// pipe2txt lines start with integer coordinates and hold only printable ascii
+	
+	private static boolean isNumericText(byte[] bytes) {
+		
+		boolean sawDigit = false;
+		
+		for (byte b : bytes) {
+			
+			if (b == ' ' || b == '\t' || b == '\r' || b == '\n')
+				
+				continue;
+			
+			if (b < 32 || b > 126)
+				
+				return false;
+			
+			if (!sawDigit && !Character.isDigit(b))
+				
+				return false;
+			
+			sawDigit = true;
+		}
+		
+		return sawDigit;
+	}
+	
+	private static String localPath(URI fileURI) {
+		
+		if (!"file".equals(fileURI.getScheme()))
+			
+			throw new IllegalArgumentException("Text files can only be read from local files: "+fileURI);
+		
+		return new File(fileURI).getPath();
+	}
+	
+	private static URI toUri(String filename) {
+		
+		try {
+			
+			return new URI("file", null, new File(filename).getAbsolutePath(), null);
+	
+		} catch (URISyntaxException e) {
+			
+			throw new IllegalArgumentException("Bad name for file: "+e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,746 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.GetAsDoubleArray;
+import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.data.NdData;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.misc.DataSourceUtils;
+import nom.bdezonia.zorbage.sampling.IntegerIndex;
+import nom.bdezonia.zorbage.type.complex.float16.ComplexFloat16Member;
+import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
+import nom.bdezonia.zorbage.type.complex.float64.ComplexFloat64Member;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.octonion.float32.OctonionFloat32Member;
+import nom.bdezonia.zorbage.type.quaternion.float32.QuaternionFloat32Member;
+import nom.bdezonia.zorbage.type.real.float16.Float16Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * Writes data sets made by the readers into NumPy's .npy and .npz
+ * formats so they can be loaded in Python with numpy.load().
+ * <p>
+ * Arrays are written in C order with the zorbage dimensions reversed:
+ * a data set with dims (X, Y, Z) becomes an array of shape (Z, Y, X).
+ * Y is in zorbage orientation. Reals are written as float16, float32,
+ * float64 or int16 as stored. Complex float32 and float64 values are
+ * written as complex64 and complex128. Complex half floats, quaternions
+ * and octonions get a trailing axis that holds their components.
+ * <p>
+ * Each write also makes a JSON sidecar named like the array file with
+ * a .ppm.json suffix. It lists the axes in NumPy order with their labels,
+ * units, sizes and the ppm of every index as projected by the data set's
+ * coordinate space. For reduced precision data it has the scale too.
+ * 
+ * @author Barry DeZonia
+ */
+public final class NpyWriter {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private static final byte[] MAGIC = new byte[] {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+	
+	// do not instantiate
+	
+	private NpyWriter() { }
+
+	/**
+	 * Write a data set to a .npy file plus its .ppm.json sidecar.
+	 * 
+	 * @param filename Name of output file.
+	 * @param alg The algebra that can access values from the data set.
+	 * @param data The data set to save to disk.
+	 */
+	public static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		void writeNpy(String filename, T alg, DimensionedDataSource<U> data)
+	{
+		Encoder<U> encoder = new Encoder<>(alg, data);
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			channel.write(ByteBuffer.wrap(encoder.header()));
+			
+			encoder.encode(buffer -> {
+				
+				while (buffer.hasRemaining()) {
+					
+					channel.write(buffer);
+				}
+			});
+			
+			writeSidecar(sidecarName(filename, ".npy"), data, encoder);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException writing "+filename+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Write a data set to an uncompressed .npz archive plus its .ppm.json
+	 * sidecar. The archive holds the values as "data" and the ppm of each
+	 * index of NumPy axis k as the float64 array "ppm_k".
+	 * 
+	 * @param filename Name of output file.
+	 * @param alg The algebra that can access values from the data set.
+	 * @param data The data set to save to disk.
+	 */
+	public static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		void writeNpz(String filename, T alg, DimensionedDataSource<U> data)
+	{
+		Encoder<U> encoder = new Encoder<>(alg, data);
+
+		double[][] ppms = ppms(data);
+		
+		try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE))) {
+			
+			// stored entries need their crc before their bytes so the
+			//   values are encoded twice: once to sum and once to write
+			
+			CRC32 crc = new CRC32();
+			
+			byte[] header = encoder.header();
+			
+			crc.update(header);
+			
+			encoder.encode(buffer -> crc.update(buffer));
+			
+			zip.putNextEntry(storedEntry("data.npy", header.length + encoder.dataBytes(), crc.getValue()));
+			
+			zip.write(header);
+			
+			encoder.encode(buffer -> zip.write(buffer.array(), buffer.position(), buffer.remaining()));
+			
+			zip.closeEntry();
+			
+			if (ppms != null) {
+				
+				for (int k = 0; k < ppms.length; k++) {
+					
+					byte[] bytes = doubleArray(ppms[k]);
+					
+					crc.reset();
+					
+					crc.update(bytes);
+					
+					zip.putNextEntry(storedEntry("ppm_"+k+".npy", bytes.length, crc.getValue()));
+					
+					zip.write(bytes);
+					
+					zip.closeEntry();
+				}
+			}
+			
+			zip.finish();
+			
+			writeSidecar(sidecarName(filename, ".npz"), data, encoder);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException writing "+filename+": "+e.getMessage());
+		}
+	}
+	
+	private static ZipEntry storedEntry(String name, long size, long crc) {
+		
+		ZipEntry entry = new ZipEntry(name);
+		
+		entry.setMethod(ZipEntry.STORED);
+		
+		entry.setSize(size);
+		
+		entry.setCompressedSize(size);
+		
+		entry.setCrc(crc);
+		
+		return entry;
+	}
+	
+	private static String sidecarName(String filename, String suffix) {
+		
+		if (filename.endsWith(suffix))
+			
+			filename = filename.substring(0, filename.length() - suffix.length());
+		
+		return filename + ".ppm.json";
+	}
+	
+	/**
+	 * The npy header: magic, version 1.0, the length of the description
+	 * and the description padded with spaces to a multiple of 64 bytes.
+	 */
+	private static byte[] header(String descr, long[] shape) {
+		
+		StringBuilder dict = new StringBuilder();
+		
+		dict.append("{'descr': '").append(descr).append("', 'fortran_order': False, 'shape': (");
+		
+		for (int i = 0; i < shape.length; i++) {
+			
+			dict.append(shape[i]).append(", ");
+		}
+		
+		if (shape.length > 1)
+			
+			dict.setLength(dict.length() - 2);
+		
+		else if (shape.length == 1)
+			
+			dict.setLength(dict.length() - 1);
+		
+		dict.append("), }");
+		
+		int unpadded = MAGIC.length + 4 + dict.length() + 1;
+		
+		int padding = (64 - unpadded % 64) % 64;
+		
+		for (int i = 0; i < padding; i++) {
+			
+			dict.append(' ');
+		}
+		
+		dict.append('\n');
+		
+		ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 4 + dict.length()).order(ByteOrder.LITTLE_ENDIAN);
+		
+		buffer.put(MAGIC);
+		
+		buffer.put((byte) 1);
+		
+		buffer.put((byte) 0);
+		
+		buffer.putShort((short) dict.length());
+		
+		buffer.put(dict.toString().getBytes(StandardCharsets.US_ASCII));
+		
+		return buffer.array();
+	}
+	
+	private static byte[] doubleArray(double[] values) {
+		
+		byte[] header = header("<f8", new long[] {values.length});
+		
+		ByteBuffer buffer = ByteBuffer.allocate(header.length + 8 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+		
+		buffer.put(header);
+		
+		for (double v : values) {
+			
+			buffer.putDouble(v);
+		}
+		
+		return buffer.array();
+	}
+	
+	/**
+	 * The ppm of each index along each axis in NumPy axis order or null
+	 * if the data set has no coordinate space.
+	 */
+	private static double[][] ppms(DimensionedDataSource<?> data) {
+		
+		BigDecimal[][] values = projections(data);
+		
+		if (values == null)
+			
+			return null;
+		
+		double[][] ppms = new double[values.length][];
+		
+		for (int k = 0; k < values.length; k++) {
+			
+			ppms[k] = new double[values[k].length];
+			
+			for (int i = 0; i < values[k].length; i++) {
+				
+				ppms[k][i] = values[k][i].doubleValue();
+			}
+		}
+		
+		return ppms;
+	}
+	
+	private static BigDecimal[][] projections(DimensionedDataSource<?> data) {
+		
+		CoordinateSpace space = data.getCoordinateSpace();
+		
+		if (space == null)
+			
+			return null;
+		
+		int numD = data.numDimensions();
+		
+		BigDecimal[][] values = new BigDecimal[numD][];
+		
+		long[] coord = new long[numD];
+		
+		for (int axis = 0; axis < numD; axis++) {
+			
+			long size = data.dimension(axis);
+			
+			if (size > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("axis "+axis+" is too long to calibrate");
+			
+			BigDecimal[] ppm = new BigDecimal[(int) size];
+			
+			for (long i = 0; i < size; i++) {
+				
+				coord[axis] = i;
+				
+				ppm[(int) i] = space.project(coord, axis);
+			}
+			
+			coord[axis] = 0;
+			
+			values[numD - 1 - axis] = ppm;
+		}
+		
+		return values;
+	}
+	
+	private static void writeSidecar(String filename, DimensionedDataSource<?> data, Encoder<?> encoder)
+		
+		throws IOException
+	{
+		BigDecimal[][] ppms = projections(data);
+		
+		int numD = data.numDimensions();
+		
+		try (Writer out = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+			
+			out.write("{\n");
+			
+			out.write("  \"name\": " + quote(data.getName()) + ",\n");
+			
+			out.write("  \"source\": " + quote(data.getSource()) + ",\n");
+			
+			out.write("  \"dtype\": " + quote(encoder.descr) + ",\n");
+			
+			out.write("  \"shape\": " + list(encoder.shape) + ",\n");
+			
+			if (encoder.scale != null)
+				
+				out.write("  \"" + ReducedPrecision.SCALE_KEY + "\": " + encoder.scale + ",\n");
+			
+			out.write("  \"axes\": [");
+			
+			for (int k = 0; k < numD; k++) {
+				
+				int axis = numD - 1 - k;
+				
+				out.write(k == 0 ? "\n" : ",\n");
+				
+				out.write("    {\"zorbage axis\": " + axis +
+						", \"label\": " + quote(data.getAxisType(axis)) +
+						", \"unit\": " + quote(data.getAxisUnit(axis)) +
+						", \"size\": " + data.dimension(axis) +
+						", \"ppm\": ");
+				
+				if (ppms == null) {
+					
+					out.write("null}");
+				}
+				else {
+					
+					out.write("[");
+					
+					for (int i = 0; i < ppms[k].length; i++) {
+						
+						if (i != 0)
+							
+							out.write(", ");
+						
+						out.write(ppms[k][i].toString());
+					}
+					
+					out.write("]}");
+				}
+			}
+			
+			out.write("\n  ]\n}\n");
+		}
+	}
+	
+	private static String list(long[] values) {
+		
+		StringBuilder b = new StringBuilder("[");
+		
+		for (int i = 0; i < values.length; i++) {
+			
+			if (i != 0)
+				
+				b.append(", ");
+			
+			b.append(values[i]);
+		}
+		
+		return b.append(']').toString();
+	}
+	
+	private static String quote(String s) {
+		
+		if (s == null)
+			
+			return "null";
+		
+		StringBuilder b = new StringBuilder("\"");
+		
+		for (int i = 0; i < s.length(); i++) {
+			
+			char ch = s.charAt(i);
+			
+			if (ch == '"' || ch == '\\')
+				
+				b.append('\\').append(ch);
+			
+			else if (ch < 0x20)
+				
+				b.append(String.format("\\u%04x", (int) ch));
+			
+			else
+				
+				b.append(ch);
+		}
+		
+		return b.append('"').toString();
+	}
+	
+	/**
+	 * The bits of the IEEE half float nearest a float.
+	 */
+	static short halfBits(float value) {
+		
+		int bits = Float.floatToIntBits(value);
+		
+		int sign = (bits >>> 16) & 0x8000;
+		
+		int magnitude = bits & 0x7fffffff;
+		
+		if (magnitude > 0x7f800000)
+			
+			return (short) (sign | 0x7e00);  // NaN
+		
+		// round to nearest even at the 13 bits that get dropped
+		
+		int rounded = magnitude + 0xfff + ((magnitude >>> 13) & 1);
+		
+		if (rounded >= 0x47800000)
+			
+			return (short) (sign | 0x7c00);  // too big: infinity
+		
+		if (rounded >= 0x38800000)
+			
+			return (short) (sign | ((rounded - 0x38000000) >>> 13));  // normal
+		
+		if (magnitude < 0x33000000)
+			
+			return (short) sign;  // too small: zero
+		
+		// subnormal
+		
+		int shift = 126 - (magnitude >>> 23);
+		
+		int mantissa = (magnitude & 0x7fffff) | 0x800000;
+		
+		return (short) (sign | ((mantissa + (1 << (shift - 1)) - 1 + ((mantissa >>> shift) & 1)) >>> shift));
+	}
+	
+	private interface ChunkWriter {
+		
+		void write(ByteBuffer buffer) throws IOException;
+	}
+	
+	private interface Put<U> {
+		
+		void put(U value, ByteBuffer buffer);
+	}
+	
+	/**
+	 * Turns the values of a data set into little endian npy bytes. Values
+	 * are visited with the first zorbage dimension varying fastest, which
+	 * is C order for the reversed NumPy shape. As in PipeToTextWriter the
+	 * backing storage of an NdData is read directly.
+	 */
+	private static class Encoder<U extends GetAsDoubleArray> {
+		
+		private final DimensionedDataSource<U> data;
+		
+		private final IndexedDataSource<U> raw;
+		
+		private final long[] dims;
+		
+		private final long numPoints;
+		
+		private final U value;
+		
+		private final String descr;
+		
+		private final int bytesPerValue;
+		
+		private final Put<U> put;
+		
+		private final long[] shape;
+		
+		private final Double scale;
+		
+		<T extends Algebra<T,U>>
+		
+			Encoder(T alg, DimensionedDataSource<U> data)
+		{
+			this.data = data;
+			
+			this.dims = DataSourceUtils.dimensions(data);
+			
+			long n = 1;
+			
+			for (int i = 0; i < dims.length; i++) {
+				
+				n *= dims[i];
+			}
+			
+			this.numPoints = n;
+			
+			if (data instanceof NdData && data.rawData().size() == numPoints)
+				
+				this.raw = data.rawData();
+			
+			else
+				
+				this.raw = null;
+			
+			this.value = alg.construct();
+			
+			int components = 1;
+			
+			Double scale = null;
+			
+			if (value instanceof Float32Member) {
+				
+				descr = "<f4";
+				
+				bytesPerValue = 4;
+				
+				put = (v, b) -> b.putFloat(((Float32Member) v).v());
+			}
+			else if (value instanceof Float64Member) {
+				
+				descr = "<f8";
+				
+				bytesPerValue = 8;
+				
+				put = (v, b) -> b.putDouble(((Float64Member) v).v());
+			}
+			else if (value instanceof ComplexFloat32Member) {
+				
+				descr = "<c8";
+				
+				bytesPerValue = 8;
+				
+				put = (v, b) -> {
+					ComplexFloat32Member c = (ComplexFloat32Member) v;
+					b.putFloat(c.r());
+					b.putFloat(c.i());
+				};
+			}
+			else if (value instanceof ComplexFloat64Member) {
+				
+				descr = "<c16";
+				
+				bytesPerValue = 16;
+				
+				put = (v, b) -> {
+					ComplexFloat64Member c = (ComplexFloat64Member) v;
+					b.putDouble(c.r());
+					b.putDouble(c.i());
+				};
+			}
+			else if (value instanceof Float16Member) {
+				
+				descr = "<f2";
+				
+				bytesPerValue = 2;
+				
+				put = (v, b) -> b.putShort(halfBits(((Float16Member) v).v()));
+				
+				scale = data.metadata().getDouble(ReducedPrecision.SCALE_KEY);
+			}
+			else if (value instanceof ComplexFloat16Member) {
+				
+				// NumPy has no complex half type
+				
+				descr = "<f2";
+				
+				bytesPerValue = 4;
+				
+				components = 2;
+				
+				put = (v, b) -> {
+					ComplexFloat16Member c = (ComplexFloat16Member) v;
+					b.putShort(halfBits(c.r()));
+					b.putShort(halfBits(c.i()));
+				};
+				
+				scale = data.metadata().getDouble(ReducedPrecision.SCALE_KEY);
+			}
+			else if (value instanceof SignedInt16Member) {
+				
+				descr = "<i2";
+				
+				bytesPerValue = 2;
+				
+				put = (v, b) -> b.putShort((short) ((SignedInt16Member) v).v());
+				
+				scale = data.metadata().getDouble(ReducedPrecision.SCALE_KEY);
+			}
+			else if (value instanceof QuaternionFloat32Member || value instanceof OctonionFloat32Member) {
+				
+				components = value.getAsDoubleArray().length;
+				
+				descr = "<f4";
+				
+				bytesPerValue = 4 * components;
+				
+				put = (v, b) -> {
+					for (double d : v.getAsDoubleArray()) {
+						b.putFloat((float) d);
+					}
+				};
+			}
+			else {
+				
+				components = value.getAsDoubleArray().length;
+				
+				descr = "<f8";
+				
+				bytesPerValue = 8 * components;
+				
+				put = (v, b) -> {
+					for (double d : v.getAsDoubleArray()) {
+						b.putDouble(d);
+					}
+				};
+			}
+			
+			this.scale = scale;
+			
+			this.shape = new long[dims.length + (components > 1 ? 1 : 0)];
+			
+			for (int i = 0; i < dims.length; i++) {
+				
+				shape[dims.length - 1 - i] = dims[i];
+			}
+			
+			if (components > 1)
+				
+				shape[dims.length] = components;
+		}
+		
+		byte[] header() {
+			
+			return NpyWriter.header(descr, shape);
+		}
+		
+		long dataBytes() {
+			
+			return numPoints * bytesPerValue;
+		}
+		
+		/**
+		 * Pass the encoded values to a writer a buffer at a time. The
+		 * buffers are heap buffers positioned at their first byte.
+		 */
+		void encode(ChunkWriter writer) throws IOException {
+			
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, bytesPerValue)).order(ByteOrder.LITTLE_ENDIAN);
+			
+			IntegerIndex idx = new IntegerIndex(dims.length);
+			
+			for (long p = 0; p < numPoints; p++) {
+				
+				if (raw != null) {
+					
+					raw.get(p, value);
+				}
+				else {
+					
+					data.get(idx, value);
+					
+					for (int i = 0; i < dims.length; i++) {
+						
+						long pos = idx.get(i) + 1;
+						
+						if (pos < dims[i]) {
+							
+							idx.set(i, pos);
+							
+							break;
+						}
+						
+						idx.set(i, 0);
+					}
+				}
+				
+				if (buffer.remaining() < bytesPerValue) {
+					
+					buffer.flip();
+					
+					writer.write(buffer);
+					
+					buffer.clear();
+				}
+				
+				put.put(value, buffer);
+			}
+			
+			buffer.flip();
+			
+			if (buffer.hasRemaining())
+				
+				writer.write(buffer);
+		}
+	}
+}
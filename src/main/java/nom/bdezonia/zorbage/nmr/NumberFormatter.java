@@ -0,0 +1,377 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers as ASCII bytes straight into a caller supplied buffer.
+ * Doubles are written with the fewest digits that parse back to the same
+ * value (the Schubfach algorithm of Raffaello Giulietti) using the layout
+ * of Double.toString(). Nothing is allocated per call.
+ * 
+ * @author Barry DeZonia
+ */
+final class NumberFormatter {
+
+	/**
+	 * The most bytes formatDouble() can write.
+	 */
+	static final int MAX_DOUBLE_CHARS = 24;
+	
+	/**
+	 * The most bytes formatLong() can write.
+	 */
+	static final int MAX_LONG_CHARS = 20;
+	
+	private static final int Q_MIN = -1074;
+	
+	private static final long C_MIN = 1L << 52;
+	
+	private static final long C_TINY = 3;
+	
+	private static final int K_MIN = -324;
+	
+	private static final int K_MAX = 292;
+	
+	private static final long MASK_63 = (1L << 63) - 1;
+	
+	// g[2*(k-K_MIN)] and g[2*(k-K_MIN)+1] hold the upper and lower 63 bits
+	//   of floor(10^-k * 2^-r) + 1 where r is chosen so the value has 126 bits.
+	
+	private static final long[] g = new long[2 * (K_MAX - K_MIN + 1)];
+	
+	static {
+		
+		BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+		
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			
+			int r = flog2pow10(-k) - 125;
+			
+			BigInteger num = BigInteger.TEN.pow(Math.max(-k, 0)).shiftLeft(Math.max(-r, 0));
+			
+			BigInteger den = BigInteger.TEN.pow(Math.max(k, 0)).shiftLeft(Math.max(r, 0));
+			
+			BigInteger gk = num.divide(den).add(BigInteger.ONE);
+			
+			g[2 * (k - K_MIN)] = gk.shiftRight(63).longValue();
+			
+			g[2 * (k - K_MIN) + 1] = gk.and(mask).longValue();
+		}
+	}
+
+	// do not instantiate
+	
+	private NumberFormatter() { }
+	
+	/**
+	 * Write the decimal digits of a long into a buffer.
+	 * 
+	 * @return The buffer position after the last byte written.
+	 */
+	static int formatLong(long v, byte[] buf, int pos) {
+		
+		if (v < 0) {
+			
+			if (v == Long.MIN_VALUE) {
+				
+				byte[] digits = Long.toString(v).getBytes();
+				
+				System.arraycopy(digits, 0, buf, pos, digits.length);
+				
+				return pos + digits.length;
+			}
+			
+			buf[pos++] = '-';
+			
+			v = -v;
+		}
+		
+		int len = 1;
+		
+		for (long t = v / 10; t != 0; t /= 10)
+			
+			len++;
+		
+		int end = pos + len;
+		
+		for (int i = end - 1; i >= pos; i--) {
+			
+			buf[i] = (byte) ('0' + (v % 10));
+			
+			v /= 10;
+		}
+		
+		return end;
+	}
+	
+	/**
+	 * Write the shortest decimal representation of a double that parses back
+	 * to the same value into a buffer. The layout matches Double.toString().
+	 * 
+	 * @return The buffer position after the last byte written.
+	 */
+	static int formatDouble(double v, byte[] buf, int pos) {
+		
+		long bits = Double.doubleToRawLongBits(v);
+		
+		long t = bits & ((1L << 52) - 1);
+		
+		int bq = (int) (bits >>> 52) & 0x7ff;
+		
+		if (bq == 0x7ff) {
+
+			return copy(t != 0 ? "NaN" : (bits < 0 ? "-Infinity" : "Infinity"), buf, pos);
+		}
+
+		if (bits < 0)
+			
+			buf[pos++] = '-';
+		
+		if (bq != 0) {
+			
+			// normal value
+			
+			int q = bq - 1075;
+			
+			long c = C_MIN | t;
+			
+			if (0 < -q & -q < 53) {
+				
+				long f = c >> -q;
+				
+				if (f << -q == c) {
+					
+					// an integer value
+					
+					return toChars(f, 0, buf, pos);
+				}
+			}
+			
+			return toDecimal(q, c, 0, buf, pos);
+		}
+		
+		if (t == 0)
+			
+			return copy("0.0", buf, pos);
+
+		// subnormal value
+		
+		return t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, buf, pos) : toDecimal(Q_MIN, t, 0, buf, pos);
+	}
+	
+	private static int toDecimal(int q, long c, int dk, byte[] buf, int pos) {
+		
+		int out = (int) c & 0x1;
+		
+		long cb = c << 2;
+		
+		long cbr = cb + 2;
+		
+		long cbl;
+		
+		int k;
+		
+		if (c != C_MIN | q == Q_MIN) {
+			
+			cbl = cb - 2;
+			
+			k = flog10pow2(q);
+		}
+		else {
+			
+			cbl = cb - 1;
+			
+			k = flog10threeQuartersPow2(q);
+		}
+		
+		int h = q + flog2pow10(-k) + 2;
+
+		long g1 = g[2 * (k - K_MIN)];
+		
+		long g0 = g[2 * (k - K_MIN) + 1];
+
+		long vb = rop(g1, g0, cb << h);
+		
+		long vbl = rop(g1, g0, cbl << h);
+		
+		long vbr = rop(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		
+		if (s >= 100) {
+			
+			long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+			
+			long tp10 = sp10 + 10;
+			
+			boolean upin = vbl + out <= sp10 << 2;
+			
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			
+			if (upin != wpin)
+				
+				return toChars(upin ? sp10 : tp10, k, buf, pos);
+		}
+		
+		long u = s + 1;
+		
+		boolean uin = vbl + out <= s << 2;
+		
+		boolean win = (u << 2) + out <= vbr;
+		
+		if (uin != win)
+			
+			return toChars(uin ? s : u, k + dk, buf, pos);
+		
+		long cmp = vb - (s + u << 1);
+		
+		return toChars(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : u, k + dk, buf, pos);
+	}
+	
+	private static long rop(long g1, long g0, long cp) {
+		
+		long x1 = Math.multiplyHigh(g0, cp);
+		
+		long y0 = g1 * cp;
+		
+		long y1 = Math.multiplyHigh(g1, cp);
+		
+		long z = (y0 >>> 1) + x1;
+		
+		long vbp = y1 + (z >>> 63);
+		
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+	
+	// write the value f * 10^e laid out like Double.toString()
+	
+	private static int toChars(long f, int e, byte[] buf, int pos) {
+		
+		while (f % 10 == 0) {
+			
+			f /= 10;
+			
+			e++;
+		}
+
+		int len = 1;
+		
+		for (long t = f / 10; t != 0; t /= 10)
+			
+			len++;
+
+		// the value is 0.d1d2...dn * 10^exp
+		
+		int exp = e + len;
+		
+		if (exp > 0 && exp <= 7) {
+			
+			// 1 <= value < 10^7 : plain notation
+			
+			if (len <= exp) {
+				
+				pos = formatLong(f, buf, pos);
+				
+				for (int i = len; i < exp; i++)
+					
+					buf[pos++] = '0';
+				
+				buf[pos++] = '.';
+				
+				buf[pos++] = '0';
+			}
+			else {
+				
+				int start = pos;
+				
+				pos = formatLong(f, buf, pos + 1);
+				
+				System.arraycopy(buf, start + 1, buf, start, exp);
+				
+				buf[start + exp] = '.';
+			}
+			
+			return pos;
+		}
+		
+		if (exp > -3 && exp <= 0) {
+			
+			// 10^-3 <= value < 1 : plain notation with leading zeros
+			
+			buf[pos++] = '0';
+			
+			buf[pos++] = '.';
+			
+			for (int i = exp; i < 0; i++)
+				
+				buf[pos++] = '0';
+			
+			return formatLong(f, buf, pos);
+		}
+		
+		// computerized scientific notation
+		
+		int start = pos;
+		
+		pos = formatLong(f, buf, pos + 1);
+		
+		buf[start] = buf[start + 1];
+		
+		buf[start + 1] = '.';
+		
+		if (len == 1)
+			
+			buf[pos++] = '0';
+		
+		buf[pos++] = 'E';
+		
+		return formatLong(exp - 1, buf, pos);
+	}
+	
+	private static int copy(String s, byte[] buf, int pos) {
+		
+		for (int i = 0; i < s.length(); i++)
+			
+			buf[pos++] = (byte) s.charAt(i);
+		
+		return pos;
+	}
+	
+	private static int flog10pow2(int e) {
+		
+		return (int) (e * 661_971_961_083L >> 41);
+	}
+
+	private static int flog10threeQuartersPow2(int e) {
+		
+		return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+	}
+
+	private static int flog2pow10(int e) {
+		
+		return (int) (e * 913_124_641_741L >> 38);
+	}
+}
@@ -24,27 +24,49 @@
 package nom.bdezonia.zorbage.nmr;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.Allocatable;
 import nom.bdezonia.zorbage.algebra.G;
 import nom.bdezonia.zorbage.algebra.HasComponents;
 import nom.bdezonia.zorbage.algebra.SetFromDoubles;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
 import nom.bdezonia.zorbage.data.DimensionedDataSource;
-import nom.bdezonia.zorbage.data.DimensionedStorage;
+import nom.bdezonia.zorbage.data.NdData;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
 import nom.bdezonia.zorbage.misc.DataBundle;
 import nom.bdezonia.zorbage.sampling.IntegerIndex;
 import nom.bdezonia.zorbage.sampling.RealIndex;
 import nom.bdezonia.zorbage.tuple.Tuple4;
+import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
 import nom.bdezonia.zorbage.type.complex.float64.ComplexFloat64Member;
 import nom.bdezonia.zorbage.type.geom.point.Point;
+import nom.bdezonia.zorbage.type.octonion.float32.OctonionFloat32Member;
 import nom.bdezonia.zorbage.type.octonion.float64.OctonionFloat64Member;
+import nom.bdezonia.zorbage.type.quaternion.float32.QuaternionFloat32Member;
 import nom.bdezonia.zorbage.type.quaternion.float64.QuaternionFloat64Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
 import nom.bdezonia.zorbage.type.real.float64.Float64Member;
 
 /**
@@ -54,10 +76,29 @@ import nom.bdezonia.zorbage.type.real.float64.Float64Member;
  */
 public class PipeToTextReader {
 
+	// Files smaller than this are parsed in a single chunk. Bigger files
+	//   are split into line aligned byte ranges and parsed in parallel.
+	
+	private static final long MIN_CHUNK_BYTES = 8L * 1024 * 1024;
+	
+	private static final ReaderMetrics METRICS = ReaderMetrics.forReader(PipeToTextReader.class);
+	
+	// the number of lines parsed between progress updates and cancellation checks
+	
+	private static final int PROGRESS_LINES = 4096;
+	
+	// the number of leading lines whose every column is parsed to tell the
+	//   coordinate columns from the data columns
+	
+	private static final int SAMPLE_LINES = 1024;
+
 	/**
 	 * Get important metadata about the given NMRPipe text data file.
 	 * Used by the file readers to know how to allocate and populate
-	 * a correct data grid.
+	 * a correct data grid. Every column of the first lines is parsed to
+	 * tell the coordinate columns from the data columns. The rest of the
+	 * file only has its coordinate columns parsed unless it disagrees
+	 * with the first lines, in which case every column is scanned.
 	 * 
 	 * @param filename Name of the NMRPipe text data file that contains numeric values.
 	 *  
@@ -69,105 +110,340 @@ public class PipeToTextReader {
 	
 			readMetadata(String filename)
 	{
-		FileReader fr = null;
-		
-		BufferedReader br = null;
+		return readMetadata(filename, ReadListener.NONE);
+	}
+
+	/**
+	 * Get important metadata about the given NMRPipe text data file
+	 * and report the time the scan took as a HEADER phase.
+	 * 
+	 * @param filename Name of the NMRPipe text data file that contains numeric values.
+	 * @param listener Receives the timing of the scan.
+	 *  
+	 * @return A tuple of (numDims, numDecimalCols, minDim, maxDim).
+	 */
+	public static
+	
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>
+	
+			readMetadata(String filename, ReadListener listener)
+	{
+		return readMetadata(filename, listener, new ReadProgress());
+	}
 
+	private static
+	
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>
+	
+			readMetadata(String filename, ReadListener listener, ReadProgress progress)
+	{
 		try {
 			
-			fr = new FileReader(filename);
-		
-			br = new BufferedReader(fr);
+			long start = System.nanoTime();
 			
-			RealIndex min = null;
-
-			RealIndex max = null;
+			FlightEvents.HeaderParsed parsed = new FlightEvents.HeaderParsed();
 			
-			int numCols = 0;
+			parsed.begin();
 			
-			int numDims = 0;
-
-			int numDecimalCols = 0;
-
-			Set<Integer> decimalCols = new HashSet<>(); 
+			TextCache.Reader cache = TextCache.open(filename);
 			
-			while (br.ready()) {
+			if (cache != null) {
 				
-				String line = br.readLine();
+				// an up to date sidecar already knows the answer: skip the scan
 				
-				String[] terms = line.trim().split("\\s+");
+				long fileSize = new File(filename).length();
 				
-				numCols = terms.length;
-
-				if (min == null) {
-					
-					min = new RealIndex(numCols);
-					max = new RealIndex(numCols);
-					
-					for (int i = 0; i < numCols; i++) {
-						
-						min.set(i, Double.MAX_VALUE);
-						max.set(i, -Double.MAX_VALUE);
-					}
-				}
+				progress.advance(fileSize);
 				
-				for (int i = 0; i < numCols; i++) {
-					
-					double val = Double.parseDouble(terms[i]);
-					
-					if (Math.floor(val) != val)
-						decimalCols.add(i);
-					
-					if (val < min.get(i))
-						min.set(i, val);
-					
-					if (val > max.get(i))
-						max.set(i, val);
-				}
+				parsed.report(filename, "pipe2txt cache", cache.size());
+				
+				listener.phaseCompleted(filename, ReadListener.Phase.HEADER,
+											System.nanoTime() - start, 0, 0);
+				
+				return new Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>(
+						cache.numDims, cache.numCols, cache.min, cache.max);
 			}
-
-			numDecimalCols = decimalCols.size();
 			
-			numDims = numCols - numDecimalCols;
-
-			IntegerIndex minDim = new IntegerIndex(numDims);
+			// classify the columns from the first lines and then parse only
+			//   the coordinate columns of the rest. If the rest of the file
+			//   contradicts the sample every column of every line is scanned.
 			
-			IntegerIndex maxDim = new IntegerIndex(numDims);
+			Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> metadata = scanCoordinates(filename, progress);
 			
-			for (int i = 0; i < numDims; i++) {
-				
-				long minVal = (long) min.get(i); 
+			if (metadata == null)
 				
-				long maxVal = (long) max.get(i);
-				
-				minDim.set(i, minVal);
-				
-				maxDim.set(i, maxVal);
-			}
+				metadata = scanColumns(filename, progress);
 	
-			return new Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>(numDims, numDecimalCols, minDim, maxDim);
+			long fileSize = new File(filename).length();
+			
+			parsed.report(filename, "pipe2txt", fileSize);
+			
+			listener.phaseCompleted(filename, ReadListener.Phase.HEADER,
+										System.nanoTime() - start, fileSize, 0);
+			
+			return metadata;
+			
+		} catch (CancellationException e) {
+			
+			throw e;
 			
 		} catch (Exception e) {
 
 			System.out.println("Exception detected: "+e.getMessage());
 			
 			return null;
-			
-		} finally {
+		}
+	}
 
-			try {
+	/**
+	 * Find the metadata of a text file by parsing every column of every line.
+	 */
+	private static
+	
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>
+	
+			scanColumns(String filename, ReadProgress progress)
+		
+			throws IOException
+	{
+		ChunkMetadata info;
+		
+		if (TextCodecs.forFilename(filename) != null) {
+			
+			// compressed data cannot be split into byte ranges: scan it serially
+			
+			try (BufferedReader br = openCompressed(filename)) {
+				
+				info = scanMetadata(br, progress);
+			}
+		}
+		else {
+			
+			List<long[]> ranges = chunkRanges(filename);
+			
+			// scan each chunk on the fork join pool and merge the results in file order
+			
+			info =
 					
-				if (br != null) br.close();
+				ranges.parallelStream()
+					.map(range -> scanMetadata(filename, range, progress))
+					.reduce(new ChunkMetadata(), ChunkMetadata::merge);
+		}
+
+		if (info.min == null)
+			
+			throw new IllegalArgumentException("text file contains no data lines");
+		
+		int numDecimalCols = info.decimalCols.size();
+		
+		int numDims = info.numCols - numDecimalCols;
+
+		IntegerIndex minDim = new IntegerIndex(numDims);
+		
+		IntegerIndex maxDim = new IntegerIndex(numDims);
+		
+		for (int i = 0; i < numDims; i++) {
+			
+			long minVal = (long) info.min.get(i); 
+			
+			long maxVal = (long) info.max.get(i);
+			
+			minDim.set(i, minVal);
+			
+			maxDim.set(i, maxVal);
+		}
+		
+		return new Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>(numDims, numDecimalCols, minDim, maxDim);
+	}
+
+	/**
+	 * Find the metadata of a text file by parsing every column of its
+	 * first lines and only the coordinate columns of the rest. The data
+	 * columns of the sample must be the trailing columns. The rest of the
+	 * file must have as many columns as the sample and integer coordinates.
+	 * The result then matches that of {@link #scanColumns(String, ReadProgress)}.
+	 * 
+	 * @return The metadata or null if the file does not fit the sample.
+	 */
+	private static
+	
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>
+	
+			scanCoordinates(String filename, ReadProgress progress)
+		
+			throws IOException
+	{
+		boolean compressed = TextCodecs.forFilename(filename) != null;
+		
+		ChunkMetadata sample;
+		
+		try (BufferedReader br = compressed ? openCompressed(filename) : openRange(filename, new long[] {0, new File(filename).length()})) {
+			
+			sample = sampleMetadata(br);
+		}
+		
+		if (sample == null || sample.min == null)
+			
+			return null;
+		
+		int numCols = sample.numCols;
+		
+		int numDecimalCols = sample.decimalCols.size();
+		
+		int numDims = numCols - numDecimalCols;
+		
+		if (numDims == 0 || numDecimalCols == 0)
+			
+			return null;
+		
+		for (int col : sample.decimalCols) {
+			
+			if (col < numDims)
+				
+				return null;
+		}
+		
+		AtomicBoolean misfit = new AtomicBoolean();
+		
+		CoordinateScanner scan;
+		
+		if (compressed) {
+			
+			try (BufferedReader br = openCompressed(filename)) {
 				
-				if (fr != null) fr.close();
+				scan = new CoordinateScanner(numDims, numCols, misfit);
 				
-			} catch (Exception e) {
-					
-				;
+				scan.scan(br, progress);
 			}
 		}
+		else {
+			
+			List<long[]> ranges = chunkRanges(filename);
+			
+			scan =
+					
+				ranges.parallelStream()
+					.map(range -> {
+						
+						try (InputStream is = openRangeStream(filename, range)) {
+							
+							CoordinateScanner chunk = new CoordinateScanner(numDims, numCols, misfit);
+							
+							chunk.scan(is, progress);
+							
+							return chunk;
+							
+						} catch (IOException e) {
+							
+							throw new UncheckedIOException(e);
+						}
+					})
+					.reduce(new CoordinateScanner(numDims, numCols, misfit), CoordinateScanner::merge);
+		}
+		
+		if (misfit.get() || !scan.found)
+			
+			return null;
+		
+		IntegerIndex minDim = new IntegerIndex(numDims);
+		
+		IntegerIndex maxDim = new IntegerIndex(numDims);
+		
+		for (int i = 0; i < numDims; i++) {
+			
+			minDim.set(i, scan.min[i]);
+			
+			maxDim.set(i, scan.max[i]);
+		}
+		
+		return new Tuple4<Integer,Integer,IntegerIndex,IntegerIndex>(numDims, numDecimalCols, minDim, maxDim);
+	}
+
+	/**
+	 * Calculate the bytes of memory {@link #readAllDatasets(String)}
+	 * will allocate for a file. Text files have no header so this scans
+	 * the whole file for its dimensions and data column count.
+	 * 
+	 * @param filename Name of the NMRPipe text data file that contains numeric values.
+	 * @return The bytes of the double precision values the file would load as.
+	 */
+	public static
+	
+		long
+		
+			estimateBytes(String filename)
+	{
+		return estimateBytes(filename, 8);
+	}
+
+	/**
+	 * Calculate the bytes of memory {@link #readAllFloatDatasets(String)}
+	 * will allocate for a file. This scans the whole file like
+	 * {@link #estimateBytes(String)} does.
+	 * 
+	 * @param filename Name of the NMRPipe text data file that contains numeric values.
+	 * @return The bytes of the single precision values the file would load as.
+	 */
+	public static
+	
+		long
+		
+			estimateFloatBytes(String filename)
+	{
+		return estimateBytes(filename, 4);
 	}
+	
+	private static long estimateBytes(String filename, int bytesPerComponent) {
+		
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> metadata = readMetadata(filename);
 
+		if (metadata == null)
+			
+			throw new IllegalArgumentException("Could not scan text file "+filename);
+		
+		int numDecimalCols = metadata.b();
+		
+		// readAllDatasets() stores reals, complexes, quaternions and octonions
+		//   as 1, 2, 4 and 8 components and wider data as points of exact size
+		
+		int componentsPerValue = numDecimalCols;
+		
+		if (numDecimalCols == 3)
+			
+			componentsPerValue = 4;
+		
+		else if (numDecimalCols > 4 && numDecimalCols < 8)
+			
+			componentsPerValue = 8;
+		
+		// points always hold doubles
+		
+		if (numDecimalCols > 8)
+			
+			bytesPerComponent = 8;
+		
+		long[] dims = new long[metadata.a()];
+		
+		for (int i = 0; i < dims.length; i++) {
+			
+			dims[i] = metadata.d().get(i) - metadata.c().get(i) + 1;
+		}
+		
+		return bytesPerComponent * componentsPerValue * numElements(dims);
+	}
+	
+	private static long numElements(long[] dims) {
+		
+		long count = 1;
+		
+		for (long dim : dims) {
+			
+			count *= dim;
+		}
+		
+		return count;
+	}
+	
 	/**
 	 * Read a NMRPipe exported text file where each row is
 	 *  (dim number 1) (dim number 2) ... (data val 1) (optional data val 2)
@@ -176,7 +452,12 @@ public class PipeToTextReader {
 	 * conversion of NmrPipe data. This reader can make a gridded
 	 * data set of various types (for example reals, complexes, quaternions,
 	 * octonions, data tables, etc.) based upon the Algebra passed to this
-	 * reader.
+	 * reader. Large files are parsed in parallel: each line aligned chunk
+	 * of the file scatters its values straight into the allocated grid.
+	 * Files with a compressed suffix (see {@link TextCodecs}) are parsed
+	 * serially while a pipeline thread decompresses them. When
+	 * {@link TextCache} is enabled the parsed grid is kept in a binary
+	 * sidecar that later reads load instead of parsing the text again.
 	 * 
 	 * @param <T> The algebra.
 	 * @param <U> The types manipulated by the algebra.
@@ -192,128 +473,1160 @@ public class PipeToTextReader {
 	
 			read(String filename, T alg, U val)
 	{
-		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> metadata = readMetadata(filename);
+		return read(filename, alg, val, ReadListener.NONE);
+	}
 
-		int numDims = metadata.a();
+	/**
+	 * Read a NMRPipe exported text file as described in
+	 * {@link #read(String, Algebra, Allocatable)} and report the time
+	 * spent scanning (HEADER) and parsing (DECODE) the file.
+	 * 
+	 * @param <T> The algebra.
+	 * @param <U> The types manipulated by the algebra.
+	 * @param filename Name of the acsii text data file that contains numeric values.
+	 * @param alg The algebra used to create the kind of data values we want.
+	 * @param type The kind of data values we are wanting to create.
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return The file data as read into a DimensionedDataSource.
+	 */
+	public static <T extends Algebra<T,U>,
+					U extends Allocatable<U> & SetFromDoubles & HasComponents>
+	
+		DimensionedDataSource<U>
+	
+			read(String filename, T alg, U val, ReadListener listener)
+	{
+		return read(filename, alg, val, listener, new ReadProgress());
+	}
+
+	/**
+	 * Read a NMRPipe exported text file as described in
+	 * {@link #read(String, Algebra, Allocatable)} with progress
+	 * tracking and cancellation. Progress counts the bytes of both
+	 * passes over the file (the dimension scan and the parse).
+	 * 
+	 * @param <T> The algebra.
+	 * @param <U> The types manipulated by the algebra.
+	 * @param filename Name of the acsii text data file that contains numeric values.
+	 * @param alg The algebra used to create the kind of data values we want.
+	 * @param type The kind of data values we are wanting to create.
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return The file data as read into a DimensionedDataSource.
+	 * @throws CancellationException if the read is cancelled.
+	 */
+	public static <T extends Algebra<T,U>,
+					U extends Allocatable<U> & SetFromDoubles & HasComponents>
+	
+		DimensionedDataSource<U>
+	
+			read(String filename, T alg, U val, ReadListener listener, ReadProgress progress)
+	{
+		return read(filename, alg, val, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * Read a NMRPipe exported text file as described in
+	 * {@link #read(String, Algebra, Allocatable)} into the given kind
+	 * of storage, with progress tracking and cancellation.
+	 * 
+	 * @param <T> The algebra.
+	 * @param <U> The types manipulated by the algebra.
+	 * @param filename Name of the acsii text data file that contains numeric values.
+	 * @param alg The algebra used to create the kind of data values we want.
+	 * @param type The kind of data values we are wanting to create.
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return The file data as read into a DimensionedDataSource.
+	 * @throws CancellationException if the read is cancelled.
+	 */
+	public static <T extends Algebra<T,U>,
+					U extends Allocatable<U> & SetFromDoubles & HasComponents>
+	
+		DimensionedDataSource<U>
+	
+			read(String filename, T alg, U val, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		progress.begin(workSize(filename, 2));
 		
-		int numDecimalCols = metadata.b();
+		return readCounted(filename, alg, val, listener, progress, storage);
+	}
 
-		if (numDims == 0) {
+	private static <T extends Algebra<T,U>,
+					U extends Allocatable<U> & SetFromDoubles & HasComponents>
+	
+		DimensionedDataSource<U>
+	
+			readCounted(String filename, T alg, U val, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		DimensionedDataSource<U> data = null;
+		
+		try {
 			
-			System.out.println("Could not find any dimension columns in input file data!");
+			data = readGrid(filename, alg, val, listener, progress, storage);
 			
-			return null;
-		}
-
-		if (numDecimalCols == 0) {
+		} catch (CancellationException e) {
 			
-			System.out.println("Could not find any data columns in input file data!");
+			throw e;
 			
-			return null;
-		}
+		} catch (RuntimeException e) {
+			
+			METRICS.failed();
+			
+			throw e;
+		}
+		
+		// readGrid() records successes: it knows the byte and value counts
+		
+		if (data == null)
+			
+			METRICS.failed();
+		
+		return data;
+	}
+
+	private static <T extends Algebra<T,U>,
+					U extends Allocatable<U> & SetFromDoubles & HasComponents>
+	
+		DimensionedDataSource<U>
+	
+			readGrid(String filename, T alg, U val, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		FlightEvents.DatasetCompleted completed = new FlightEvents.DatasetCompleted();
+		
+		completed.begin();
+		
+		long readStart = System.nanoTime();
+		
+		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> metadata = readMetadata(filename, listener, progress);
+
+		if (metadata == null)
+			
+			return null;
+		
+		int numDims = metadata.a();
+		
+		int numDecimalCols = metadata.b();
+
+		if (numDims == 0) {
+			
+			System.out.println("Could not find any dimension columns in input file data!");
+			
+			return null;
+		}
+
+		if (numDecimalCols == 0) {
+			
+			System.out.println("Could not find any data columns in input file data!");
+			
+			return null;
+		}
 
 		IntegerIndex minDims = metadata.c();
 		
 		IntegerIndex maxDims = metadata.d();
 		
-		FileReader fr = null;
+		try {
+
+			long[] dims = new long[numDims];
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				dims[i] = maxDims.get(i) - minDims.get(i) + 1;
+			}
+			
+			// refuse oversized loads before allocating anything
+			
+			ReaderStorage.checkBudget(filename, storage, numElements(dims) * MemoryBudget.bytesPerValue(val, val.componentCount()));
+			
+			DimensionedDataSource<U> data = ReaderStorage.allocate(storage, val, dims);
+			
+			long start = System.nanoTime();
+			
+			long numLines;
+			
+			TextCache.Reader cache = TextCache.open(filename);
+			
+			TextCache.Writer writer = null;
+			
+			try {
+				
+				if (cache != null && cache.matches(numDims, numDecimalCols, minDims, maxDims)) {
+					
+					FlightEvents.BlockDecoded block = new FlightEvents.BlockDecoded();
+					
+					block.begin();
+					
+					numLines = gather(cache, alg, data, dims, new File(filename).length(), progress, storage == StorageConstruction.MEM_ARRAY);
+					
+					block.report(filename, "pipe2txt cache", cache.size(), numLines);
+				}
+				else if (TextCodecs.forFilename(filename) != null) {
+					
+					FlightEvents.BlockDecoded block = new FlightEvents.BlockDecoded();
+					
+					block.begin();
+					
+					writer = TextCache.create(filename, numDims, numDecimalCols, minDims, maxDims);
+					
+					try (BufferedReader br = openCompressed(filename)) {
+						
+						numLines = scatter(br, alg, data, numDims, numDecimalCols, minDims, dims, progress, writer);
+					}
+					
+					block.report(filename, "pipe2txt", new File(filename).length(), numLines);
+				}
+				else {
+					
+					List<long[]> ranges = chunkRanges(filename);
+					
+					TextCache.Writer cacheWriter = TextCache.create(filename, numDims, numDecimalCols, minDims, maxDims);
+					
+					writer = cacheWriter;
+		
+					// chunks write to disjoint grid positions. That is only safe
+					//   to do concurrently for array storage: virtual storage's page
+					//   cache and sparse storage's tree map are not thread safe so
+					//   those are parsed one chunk at a time.
+					
+					Stream<long[]> chunks = (storage == StorageConstruction.MEM_ARRAY) ? ranges.parallelStream() : ranges.stream();
+					
+					numLines = chunks.mapToLong(range -> {
+					
+						FlightEvents.BlockDecoded block = new FlightEvents.BlockDecoded();
+						
+						block.begin();
+						
+						try (BufferedReader br = openRange(filename, range)) {
+						
+							long lines = scatter(br, alg, data, numDims, numDecimalCols, minDims, dims, progress, cacheWriter);
+							
+							block.report(filename, "pipe2txt", range[1] - range[0], lines);
+							
+							return lines;
+							
+						} catch (IOException e) {
+							
+							throw new UncheckedIOException(e);
+						}
+						}).sum();
+				}
+				
+				if (writer != null)
+					
+					writer.finish();
+				
+			} catch (IOException | RuntimeException e) {
+				
+				if (writer != null)
+					
+					writer.abort();
+				
+				throw e;
+				
+			} finally {
+				
+				if (cache != null)
+					
+					cache.close();
+			}
+			
+			long fileSize = new File(filename).length();
+			
+			listener.phaseCompleted(filename, ReadListener.Phase.DECODE,
+										System.nanoTime() - start, fileSize, numLines);
+			
+			data.setSource(filename);
+			
+			completed.report(filename, "pipe2txt", fileSize, numLines);
+			
+			METRICS.succeeded(fileSize, numLines, System.nanoTime() - readStart);
+			
+			return data;
+
+		} catch (FileNotFoundException e) {
+			
+			System.out.println("FILE NOT FOUND : " + filename);
+			
+		} catch (UncheckedIOException e) {
+			
+			System.out.println("IO Exception : " + e.getCause().getMessage());
+			
+		} catch (IOException e) {
+			
+			System.out.println("IO Exception : " + e.getMessage());
+			
+		} catch (NumberFormatException e) {
+			
+			System.out.println("Bad number in data file : " + e.getMessage());
+		}
+		
+		return null;
+	}
+
+	/**
+	 * Parse all the lines from a reader and set their values into a
+	 * preallocated data grid.
+	 * 
+	 * @param br The source of the text lines.
+	 * @param alg The algebra used to create the kind of data values we want.
+	 * @param data The grid the values are placed in.
+	 * @param numDims The number of leading coordinate columns.
+	 * @param numDecimalCols The number of trailing data columns.
+	 * @param minDims The minimum coordinate found in the whole file.
+	 * @param dims The dimensions of the data grid.
+	 * @param progress Advanced (and checked for cancellation) every few thousand lines.
+	 * @param cache Receives every data column of every line. Can be null.
+	 * @return The number of data lines parsed.
+	 * @throws IOException
+	 */
+	private static <T extends Algebra<T,U>,
+					U extends SetFromDoubles & HasComponents>
+	
+		long
+		
+			scatter(
+					BufferedReader br,
+					T alg,
+					DimensionedDataSource<U> data,
+					int numDims,
+					int numDecimalCols,
+					IntegerIndex minDims,
+					long[] dims,
+					ReadProgress progress,
+					TextCache.Writer cache
+				)
+			throws IOException
+	{
+		U val = alg.construct();
+		
+		double[] doubleVals = new double[val.componentCount()];
+		
+		double[] columns = (cache == null) ? null : new double[numDecimalCols];
+		
+		TextCache.Writer.Block block = (cache == null) ? null : cache.block();
+		
+		IntegerIndex fixedCoord = new IntegerIndex(numDims);
+		
+		long numLines = 0;
+		
+		long bytesRead = 0;
+		
+		int linesRead = 0;
+		
+		String line;
+		
+		while ((line = br.readLine()) != null) {
+			
+			bytesRead += line.length() + 1;
+			
+			if (++linesRead == PROGRESS_LINES) {
+				
+				progress.advance(bytesRead);
+				
+				bytesRead = 0;
+				
+				linesRead = 0;
+			}
+			
+			String[] terms = line.trim().split("\\s+");
+
+			if (terms[0].isEmpty())
+				
+				continue;
+
+			for (int i = 0; i < Math.min(val.componentCount(), numDecimalCols); i++) {
+				
+				doubleVals[i] = Double.parseDouble(terms[numDims + i]);
+			}
+
+			for (int i = Math.min(val.componentCount(), numDecimalCols); i < val.componentCount(); i++) {
+
+				doubleVals[i] = 0;
+			}
+			
+			val.setFromDoubles(doubleVals);
+
+			long point = 0;
+			
+			for (int i = numDims - 1; i >= 0; i--) {
+				
+				long pos = Long.parseLong(terms[i]) - minDims.get(i);  // NMRPipe text data has 1-based origin. Subtract 1.
+				
+				if (i != 0) {
+					
+					// flip all dimensions except X: based on a conversation with Frank Delaglio.
+					
+					pos = dims[i] - 1 - pos;
+				}
+				
+				fixedCoord.set(i, pos);
+				
+				point = point * dims[i] + pos;
+			}
+
+			data.set(fixedCoord, val);
+			
+			if (cache != null) {
+				
+				for (int i = 0; i < numDecimalCols; i++) {
+					
+					columns[i] = (i < doubleVals.length) ? doubleVals[i] : Double.parseDouble(terms[numDims + i]);
+				}
+				
+				block.put(point, columns);
+			}
+			
+			numLines++;
+		}
+		
+		progress.advance(bytesRead);
+		
+		if (block != null)
+			
+			block.flush();
+		
+		return numLines;
+	}
+	
+	/**
+	 * Set the values of a text cache's grid into a preallocated data
+	 * grid. The cache is read in runs of points which run in parallel
+	 * when the grid's storage is safe to write from several threads.
+	 * 
+	 * @param cache The up to date cache of the text file.
+	 * @param alg The algebra used to create the kind of data values we want.
+	 * @param data The grid the values are placed in.
+	 * @param dims The dimensions of the data grid.
+	 * @param textBytes The size of the text file, used to report progress.
+	 * @param progress Advanced (and checked for cancellation) every few thousand points.
+	 * @param parallel True if the grid can be written from several threads at once (array storage).
+	 * @return The number of grid points set.
+	 */
+	private static <T extends Algebra<T,U>,
+					U extends SetFromDoubles & HasComponents>
+	
+		long
+		
+			gather(
+					TextCache.Reader cache,
+					T alg,
+					DimensionedDataSource<U> data,
+					long[] dims,
+					long textBytes,
+					ReadProgress progress,
+					boolean parallel
+				)
+	{
+		long numPoints = numElements(dims);
+		
+		long runLength = Math.max(PROGRESS_LINES, numPoints / (4L * ForkJoinPool.getCommonPoolParallelism()));
+		
+		List<long[]> runs = new ArrayList<>();
+		
+		for (long first = 0; first < numPoints; first += runLength) {
+			
+			runs.add(new long[] {first, Math.min(numPoints, first + runLength)});
+		}
+		
+		// like PipeToTextWriter: NdData storage is in the cache's point order
+		
+		IndexedDataSource<U> raw = (data instanceof NdData && data.rawData().size() == numPoints) ? data.rawData() : null;
+		
+		Stream<long[]> stream = parallel ? runs.parallelStream() : runs.stream();
+		
+		stream.forEach(run -> {
+			
+			U val = alg.construct();
+			
+			double[] doubleVals = new double[val.componentCount()];
+			
+			double[] columns = new double[cache.numCols];
+			
+			TextCache.Reader.Block block = cache.block();
+			
+			int count = Math.min(doubleVals.length, columns.length);
+			
+			IntegerIndex idx = new IntegerIndex(dims.length);
+			
+			long reported = run[0];
+			
+			for (long p = run[0]; p < run[1]; p++) {
+				
+				block.get(p, columns);
+				
+				System.arraycopy(columns, 0, doubleVals, 0, count);
+				
+				val.setFromDoubles(doubleVals);
+				
+				if (raw != null) {
+					
+					raw.set(p, val);
+				}
+				else {
+					
+					long remainder = p;
+					
+					for (int i = 0; i < dims.length; i++) {
+						
+						idx.set(i, remainder % dims[i]);
+						
+						remainder /= dims[i];
+					}
+					
+					data.set(idx, val);
+				}
+				
+				if (p + 1 - reported == PROGRESS_LINES || p + 1 == run[1]) {
+					
+					progress.advance(textBytes * (p + 1) / numPoints - textBytes * reported / numPoints);
+					
+					reported = p + 1;
+				}
+			}
+		});
+		
+		return numPoints;
+	}
+	
+	/**
+	 * Per chunk results of the metadata scan. Chunks are merged in file
+	 * order so that the column count matches the one a serial scan finds.
+	 */
+	private static class ChunkMetadata {
+		
+		RealIndex min = null;
+		
+		RealIndex max = null;
+		
+		int numCols = 0;
+		
+		Set<Integer> decimalCols = new HashSet<>();
+		
+		ChunkMetadata merge(ChunkMetadata later) {
+			
+			if (later.min == null)
+				
+				return this;
+			
+			if (min == null)
+				
+				return later;
+			
+			if (min.numDimensions() != later.min.numDimensions())
+				
+				throw new IllegalArgumentException("text file has inconsistent column counts");
+
+			ChunkMetadata result = new ChunkMetadata();
+			
+			result.min = new RealIndex(min.numDimensions());
+			
+			result.max = new RealIndex(max.numDimensions());
+			
+			for (int i = 0; i < min.numDimensions(); i++) {
+				
+				result.min.set(i, Math.min(min.get(i), later.min.get(i)));
+				
+				result.max.set(i, Math.max(max.get(i), later.max.get(i)));
+			}
+			
+			result.numCols = later.numCols;
+			
+			result.decimalCols.addAll(decimalCols);
+			
+			result.decimalCols.addAll(later.decimalCols);
+			
+			return result;
+		}
+	}
+	
+	/**
+	 * Finds the min and max coordinates of text lines by parsing their
+	 * coordinate columns straight from the characters. Data columns are
+	 * only counted. Coordinates that are not plain integers are parsed as
+	 * doubles like scanMetadata() does. A line with the wrong number of
+	 * columns or a fractional coordinate makes the scan a misfit, which
+	 * stops all the scans that share its flag.
+	 */
+	private static class CoordinateScanner {
+		
+		private static final long MAX_PLAIN = (Long.MAX_VALUE - 9) / 10;
+		
+		private final int numDims;
+		
+		private final int numCols;
+		
+		private final AtomicBoolean misfit;
+		
+		final long[] min;
+		
+		final long[] max;
+		
+		boolean found = false;
+		
+		// the state of the line being scanned
+		
+		private final long[] coord;
+		
+		private int column = 0;
+		
+		private boolean inToken = false;
+		
+		private boolean plain;
+		
+		private boolean digits;
+		
+		private boolean negative;
+		
+		private long value;
+		
+		private byte[] text = new byte[32];
+		
+		private int length;
+		
+		CoordinateScanner(int numDims, int numCols, AtomicBoolean misfit) {
+			
+			this.numDims = numDims;
+			
+			this.numCols = numCols;
+			
+			this.misfit = misfit;
+			
+			this.min = new long[numDims];
+			
+			this.max = new long[numDims];
+			
+			this.coord = new long[numDims];
+			
+			Arrays.fill(min, Long.MAX_VALUE);
+			
+			Arrays.fill(max, Long.MIN_VALUE);
+		}
+		
+		void scan(InputStream is, ReadProgress progress) throws IOException {
+			
+			byte[] buffer = new byte[1 << 16];
+			
+			int count;
+			
+			while (!misfit.get() && (count = is.read(buffer)) > 0) {
+				
+				for (int i = 0; i < count; i++) {
+					
+					accept(buffer[i] & 0xff);
+				}
+				
+				progress.advance(count);
+			}
+			
+			accept('\n');
+		}
+		
+		void scan(BufferedReader br, ReadProgress progress) throws IOException {
+			
+			char[] buffer = new char[1 << 16];
+			
+			int count;
+			
+			while (!misfit.get() && (count = br.read(buffer)) > 0) {
+				
+				for (int i = 0; i < count; i++) {
+					
+					accept(buffer[i]);
+				}
+				
+				progress.advance(count);
+			}
+			
+			accept('\n');
+		}
+		
+		private void accept(int ch) {
+			
+			if (ch <= ' ') {
+				
+				if (inToken)
+					
+					endToken();
+				
+				if (ch == '\n' || ch == '\r')
+					
+					endLine();
+			}
+			else {
+				
+				if (!inToken) {
+					
+					inToken = true;
+					
+					plain = true;
+					
+					digits = false;
+					
+					negative = false;
+					
+					value = 0;
+					
+					length = 0;
+				}
+				
+				if (column < numDims) {
+					
+					if (length == text.length)
+						
+						text = Arrays.copyOf(text, 2 * length);
+					
+					text[length++] = (byte) ch;
+					
+					if (plain) {
+						
+						if (ch >= '0' && ch <= '9' && value <= MAX_PLAIN) {
+							
+							value = value * 10 + (ch - '0');
+							
+							digits = true;
+						}
+						else if (length == 1 && (ch == '-' || ch == '+')) {
+							
+							negative = (ch == '-');
+						}
+						else {
+							
+							plain = false;
+						}
+					}
+				}
+			}
+		}
+		
+		private void endToken() {
+			
+			inToken = false;
+			
+			if (column < numDims) {
+				
+				if (plain && digits) {
+					
+					coord[column] = negative ? -value : value;
+				}
+				else {
+					
+					double val = Double.parseDouble(new String(text, 0, length, StandardCharsets.US_ASCII));
+					
+					if (Math.floor(val) != val)
+						
+						misfit.set(true);
+					
+					coord[column] = (long) val;
+				}
+			}
+			
+			column++;
+		}
+		
+		private void endLine() {
+			
+			if (column == 0)
+				
+				return;
+			
+			if (column != numCols) {
+				
+				misfit.set(true);
+			}
+			else {
+				
+				for (int i = 0; i < numDims; i++) {
+					
+					if (coord[i] < min[i])
+						min[i] = coord[i];
+					
+					if (coord[i] > max[i])
+						max[i] = coord[i];
+				}
+				
+				found = true;
+			}
+			
+			column = 0;
+		}
+		
+		CoordinateScanner merge(CoordinateScanner later) {
+			
+			CoordinateScanner result = new CoordinateScanner(numDims, numCols, misfit);
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				result.min[i] = Math.min(min[i], later.min[i]);
+				
+				result.max[i] = Math.max(max[i], later.max[i]);
+			}
+			
+			result.found = found || later.found;
+			
+			return result;
+		}
+	}
+	
+	private static
+	
+		ChunkMetadata
+		
+			scanMetadata(String filename, long[] range, ReadProgress progress)
+	{
+		try (BufferedReader br = openRange(filename, range)) {
+			
+			return scanMetadata(br, progress);
+			
+		} catch (IOException e) {
+			
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Find the column count, the min and max values of each column,
+	 * and which columns contain fractional values.
+	 * 
+	 * @param br The source of the text lines.
+	 * @param progress Advanced (and checked for cancellation) every few thousand lines.
+	 * @return The metadata of the lines read.
+	 * @throws IOException
+	 */
+	private static
+	
+		ChunkMetadata
+		
+			scanMetadata(BufferedReader br, ReadProgress progress)
+		
+			throws IOException
+	{
+		ChunkMetadata info = new ChunkMetadata();
+		
+		long bytesRead = 0;
+		
+		int linesRead = 0;
+		
+		String line;
+		
+		while ((line = br.readLine()) != null) {
+			
+			bytesRead += line.length() + 1;
+			
+			if (++linesRead == PROGRESS_LINES) {
+				
+				progress.advance(bytesRead);
+				
+				bytesRead = 0;
+				
+				linesRead = 0;
+			}
+			
+			String[] terms = line.trim().split("\\s+");
+			
+			if (terms[0].isEmpty())
+				
+				continue;
+			
+			scanLine(terms, info);
+		}
+		
+		progress.advance(bytesRead);
+		
+		return info;
+	}
+	
+	/**
+	 * Parse every column of the first SAMPLE_LINES lines.
+	 * 
+	 * @param br The source of the text lines.
+	 * @return The metadata of the lines read or null if their column counts differ.
+	 * @throws IOException
+	 */
+	private static
+	
+		ChunkMetadata
+		
+			sampleMetadata(BufferedReader br)
+		
+			throws IOException
+	{
+		ChunkMetadata info = new ChunkMetadata();
+		
+		int linesRead = 0;
+		
+		String line;
+		
+		while (linesRead < SAMPLE_LINES && (line = br.readLine()) != null) {
+			
+			String[] terms = line.trim().split("\\s+");
+			
+			if (terms[0].isEmpty())
+				
+				continue;
+			
+			if (info.min != null && terms.length != info.numCols)
+				
+				return null;
+			
+			scanLine(terms, info);
+			
+			linesRead++;
+		}
 		
-		BufferedReader br = null;
+		return info;
+	}
+	
+	/**
+	 * Add the values of one line to the min and max values and the
+	 * fractional columns found so far.
+	 */
+	private static void scanLine(String[] terms, ChunkMetadata info) {
 		
-		try {
+		info.numCols = terms.length;
 
-			long[] dims = new long[numDims];
+		if (info.min == null) {
 			
-			for (int i = 0; i < numDims; i++) {
+			info.min = new RealIndex(info.numCols);
+			info.max = new RealIndex(info.numCols);
+			
+			for (int i = 0; i < info.numCols; i++) {
 				
-				dims[i] = maxDims.get(i) - minDims.get(i) + 1;
+				info.min.set(i, Double.MAX_VALUE);
+				info.max.set(i, -Double.MAX_VALUE);
 			}
+		}
+		
+		for (int i = 0; i < info.numCols; i++) {
 			
-			DimensionedDataSource<U> data = DimensionedStorage.allocate(val, dims);
+			double val = Double.parseDouble(terms[i]);
 			
-			fr = new FileReader(filename);
+			if (Math.floor(val) != val)
+				info.decimalCols.add(i);
 			
-			br = new BufferedReader(fr);
+			if (val < info.min.get(i))
+				info.min.set(i, val);
 			
-			double[] doubleVals = new double[val.componentCount()];
+			if (val > info.max.get(i))
+				info.max.set(i, val);
+		}
+	}
+
+	/**
+	 * Split a file into byte ranges whose boundaries fall just after
+	 * line endings. Small files return a single range.
+	 * 
+	 * @param filename The name of the text file.
+	 * @return A list of {start, end} byte offsets in file order.
+	 * @throws IOException
+	 */
+	private static
+	
+		List<long[]>
+		
+			chunkRanges(String filename)
+		
+			throws IOException
+	{
+		List<long[]> ranges = new ArrayList<>();
+		
+		try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+		
+			long length = raf.length();
+			
+			int parallelism = ForkJoinPool.getCommonPoolParallelism();
 			
-			IntegerIndex coord = new IntegerIndex(numDims);
+			long numChunks = Math.max(1, Math.min(4L * parallelism, length / MIN_CHUNK_BYTES));
 			
-			IntegerIndex fixedCoord = new IntegerIndex(numDims);
+			long start = 0;
 			
-			while (br.ready()) {
+			for (long c = 1; c <= numChunks && start < length; c++) {
 				
-				String line = br.readLine();
+				long end = (c == numChunks) ? length : alignToLineStart(raf, length * c / numChunks);
 				
-				String[] terms = line.trim().split("\\s+");
-
-				for (int i = 0; i < numDims; i++) {
-
-					long dimVal = Long.parseLong(terms[i]);
-					
-					coord.set(i, dimVal);
-				}
+				if (end > start) {
 				
-				for (int i = 0; i < Math.min(val.componentCount(), numDecimalCols); i++) {
-					
-					doubleVals[i] = Double.parseDouble(terms[numDims + i]);
+					ranges.add(new long[] {start, end});
+				
+					start = end;
 				}
+			}
+		}
+		
+		return ranges;
+	}
 
-				for (int i = Math.min(val.componentCount(), numDecimalCols); i < val.componentCount(); i++) {
-
-					doubleVals[i] = 0;
-				}
+	/**
+	 * Move a file position forward until it sits at the beginning of a line.
+	 */
+	private static
+	
+		long
+		
+			alignToLineStart(RandomAccessFile raf, long pos)
+		
+			throws IOException
+	{
+		if (pos == 0)
+			
+			return 0;
+		
+		raf.seek(pos - 1);
+		
+		byte[] buffer = new byte[8192];
+		
+		long offset = pos - 1;
+		
+		int count;
+		
+		while ((count = raf.read(buffer)) > 0) {
+			
+			for (int i = 0; i < count; i++) {
 				
-				val.setFromDoubles(doubleVals);
-
-				for (int i = 0; i < numDims; i++) {
-					
-					long pos = coord.get(i) - minDims.get(i);  // NMRPipe text data has 1-based origin. Subtract 1.
+				if (buffer[i] == '\n')
 					
-					if (i != 0) {
-						
-						// flip all dimensions except X: based on a conversation with Frank Delaglio.
-						
-						pos = dims[i] - 1 - pos;
-					}
-					
-					fixedCoord.set(i, pos);
-				}
-
-				data.set(fixedCoord, val);
+					return offset + i + 1;
 			}
 			
-			data.setSource(filename);
+			offset += count;
+		}
+		
+		return raf.length();
+	}
+	
+	/**
+	 * Open a reader that returns the text lines of one byte range of a file.
+	 */
+	private static
+	
+		BufferedReader
+		
+			openRange(String filename, long[] range)
+		
+			throws IOException
+	{
+		InputStream is = openRangeStream(filename, range);
+		
+		return new BufferedReader(new InputStreamReader(is, StandardCharsets.US_ASCII), 1 << 16);
+	}
+	
+	/**
+	 * Open a stream of the bytes of one byte range of a file.
+	 */
+	private static
+	
+		InputStream
+		
+			openRangeStream(String filename, long[] range)
+		
+			throws IOException
+	{
+		FlightEvents.FileOpened opened = new FlightEvents.FileOpened();
+		
+		opened.begin();
+		
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		channel.position(range[0]);
+		
+		opened.report(filename, "pipe2txt", channel.size());
+		
+		return new BoundedInputStream(Channels.newInputStream(channel), range[1] - range[0]);
+	}
+	
+	/**
+	 * The number of source bytes a read covers in the given number of
+	 * passes over a file, or -1 for compressed files whose text size is
+	 * not known up front.
+	 */
+	private static long workSize(String filename, int passes) {
+		
+		if (TextCodecs.forFilename(filename) != null)
 			
-			return data;
+			return -1;
+		
+		return passes * new File(filename).length();
+	}
+	
+	/**
+	 * Open a whole compressed text file for reading.
+	 * 
+	 * @param filename The name of the compressed file.
+	 * @throws IOException
+	 */
+	private static
+	
+		BufferedReader
+		
+			openCompressed(String filename)
+		
+			throws IOException
+	{
+		FlightEvents.FileOpened opened = new FlightEvents.FileOpened();
+		
+		opened.begin();
+		
+		BufferedReader br = TextCodecs.openReader(filename);
+		
+		opened.report(filename, "pipe2txt", new File(filename).length());
+		
+		return br;
+	}
+	
+	/**
+	 * An InputStream that stops after a given number of bytes.
+	 */
+	private static class BoundedInputStream extends InputStream {
 
-		} catch (FileNotFoundException e) {
-			
-			System.out.println("FILE NOT FOUND : " + filename);
+		private final InputStream is;
+		
+		private long remaining;
+		
+		BoundedInputStream(InputStream is, long limit) {
 			
-		} catch (IOException e) {
+			this.is = is;
 			
-			System.out.println("IO Exception : " + e.getMessage());
+			this.remaining = limit;
+		}
+		
+		@Override
+		public int read() throws IOException {
+
+			if (remaining <= 0)
+				
+				return -1;
 			
-		} catch (NumberFormatException e) {
+			int b = is.read();
 			
-			System.out.println("Bad number in data file : " + e.getMessage());
+			if (b >= 0)
+				
+				remaining--;
 			
-		} finally {
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
 
-			try {
+			if (remaining <= 0)
 				
-				if (br != null) br.close();
+				return -1;
 			
-				if (fr != null) fr.close();
+			int count = is.read(b, off, (int) Math.min(len, remaining));
 			
-			} catch (Exception e) {
+			if (count > 0)
 				
-				;
-			}
+				remaining -= count;
+			
+			return count;
 		}
 		
-		return null;
+		@Override
+		public void close() throws IOException {
+			
+			is.close();
+		}
 	}
 	
 	/**
@@ -376,6 +1689,68 @@ public class PipeToTextReader {
 	{
 		return PipeToTextReader.read(filename, G.ODBL, G.ODBL.construct());
 	}
+	
+	/**
+	 * Open a NMRPipe text file as real float data. NMRPipe data is single
+	 * precision so this loses nothing and takes half the memory of
+	 * {@link #readDouble(String)}.
+	 *   
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DimensionedDataSource<Float32Member>
+	
+			readFloat(String filename)
+	{
+		return PipeToTextReader.read(filename, G.FLT, G.FLT.construct());
+	}
+
+	/**
+	 * Open a NMRPipe text file as complex float data.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DimensionedDataSource<ComplexFloat32Member>
+	
+			readComplexFloat(String filename)
+	{
+		return PipeToTextReader.read(filename, G.CFLT, G.CFLT.construct());
+	}
+
+	/**
+	 * Open a NMRPipe text file as quaternion float data.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DimensionedDataSource<QuaternionFloat32Member>
+	
+			readQuaternionFloat(String filename)
+	{
+		return PipeToTextReader.read(filename, G.QFLT, G.QFLT.construct());
+	}
+	
+	/**
+	 * Open a NMRPipe text file as octonion float data.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DimensionedDataSource<OctonionFloat32Member>
+	
+			readOctonionFloat(String filename)
+	{
+		return PipeToTextReader.read(filename, G.OFLT, G.OFLT.construct());
+	}
 
 	/**
 	 * Open a NMRPipe text file as point data.
@@ -407,11 +1782,121 @@ public class PipeToTextReader {
 		DataBundle
 		
 			readAllDatasets(String filename)
+	{
+		return readAllDatasets(filename, ReadListener.NONE);
+	}
+
+	/**
+	 * Open an NMRPipe text file and return it in a DataBundle. The
+	 * listener hears about the scan that chooses the data type as well
+	 * as the phases of the read itself.
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener)
+	{
+		return readAllDatasets(filename, listener, new ReadProgress());
+	}
+
+	/**
+	 * Open an NMRPipe text file and return it in a DataBundle with
+	 * progress tracking and cancellation. Progress counts the bytes of
+	 * all three passes over the file (the scan that chooses the data
+	 * type, the dimension scan and the parse).
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return
+	 * @throws CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress)
+	{
+		return readAllDatasets(filename, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * Open an NMRPipe text file and return it in a DataBundle as
+	 * described in {@link #readAllDatasets(String, ReadListener, ReadProgress)}
+	 * with the data loaded into the given kind of storage.
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		return readAll(filename, listener, progress, storage, false);
+	}
+
+	/**
+	 * Open an NMRPipe text file and return it in a DataBundle of single
+	 * precision data sets (flts, cflts, qflts or oflts). NMRPipe data is
+	 * float data to begin with so this halves the memory of
+	 * {@link #readAllDatasets(String)} without losing anything. Files
+	 * with more than 8 data columns are still read as points.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllFloatDatasets(String filename)
+	{
+		return readAllFloatDatasets(filename, ReadListener.NONE, new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * Open an NMRPipe text file and return it in a DataBundle of single
+	 * precision data sets as described in {@link #readAllFloatDatasets(String)}.
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllFloatDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		return readAll(filename, listener, progress, storage, true);
+	}
+	
+	private static
+	
+		DataBundle
+		
+			readAll(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage, boolean floats)
 	{
 		DataBundle bundle = new DataBundle();
 		
+		progress.begin(workSize(filename, 3));
+		
 		Tuple4<Integer,Integer,IntegerIndex,IntegerIndex> fileMetaData =
-				PipeToTextReader.readMetadata(filename);
+				PipeToTextReader.readMetadata(filename, listener, progress);
 		
 		int numDecimalCols = fileMetaData.b();
 
@@ -423,19 +1908,43 @@ public class PipeToTextReader {
 		}
 		else if (numDecimalCols == 1) {
 			
-			bundle.dbls.add( readDouble(filename) );
+			if (floats)
+				
+				bundle.flts.add( readCounted(filename, G.FLT, G.FLT.construct(), listener, progress, storage) );
+			
+			else
+				
+				bundle.dbls.add( readCounted(filename, G.DBL, G.DBL.construct(), listener, progress, storage) );
 		}
 		else if (numDecimalCols == 2) {
 			
-			bundle.cdbls.add( readComplexDouble(filename) );
+			if (floats)
+				
+				bundle.cflts.add( readCounted(filename, G.CFLT, G.CFLT.construct(), listener, progress, storage) );
+			
+			else
+				
+				bundle.cdbls.add( readCounted(filename, G.CDBL, G.CDBL.construct(), listener, progress, storage) );
 		}
 		else if (numDecimalCols <= 4) {
 			
-			bundle.qdbls.add( readQuaternionDouble(filename) );
+			if (floats)
+				
+				bundle.qflts.add( readCounted(filename, G.QFLT, G.QFLT.construct(), listener, progress, storage) );
+			
+			else
+				
+				bundle.qdbls.add( readCounted(filename, G.QDBL, G.QDBL.construct(), listener, progress, storage) );
 		}
 		else if (numDecimalCols <= 8) {
 			
-			bundle.odbls.add( readOctonionDouble(filename) );
+			if (floats)
+				
+				bundle.oflts.add( readCounted(filename, G.OFLT, G.OFLT.construct(), listener, progress, storage) );
+			
+			else
+				
+				bundle.odbls.add( readCounted(filename, G.ODBL, G.ODBL.construct(), listener, progress, storage) );
 		}
 		else {  // if here it must be > 8 components
 			
@@ -444,7 +1953,7 @@ public class PipeToTextReader {
 			// of yet we do not have hypercomplex support for more than
 			// 8 components.
 			
-			bundle.points.add( readPoints(filename, numDecimalCols) );
+			bundle.points.add( readCounted(filename, G.POINT, new Point(numDecimalCols), listener, progress, storage) );
 		}
 		
 		return bundle;
@@ -23,17 +23,21 @@
  */
 package nom.bdezonia.zorbage.nmr;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.GetAsDoubleArray;
 import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.data.NdData;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
 import nom.bdezonia.zorbage.misc.DataSourceUtils;
 import nom.bdezonia.zorbage.sampling.IntegerIndex;
-import nom.bdezonia.zorbage.sampling.SamplingCartesianIntegerGrid;
-import nom.bdezonia.zorbage.sampling.SamplingIterator;
 
 /**
  * 
@@ -42,10 +46,19 @@ import nom.bdezonia.zorbage.sampling.SamplingIterator;
  */
 public class PipeToTextWriter {
 
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	// the number of grid points each parallel formatting task handles
+	
+	private static final int RANGE_POINTS = 1 << 14;
+
 	/**
 	 * Write a data set into NMRPipe's PipeToText format. Note that it
 	 * will only write real or complex valued data. Other data types
-	 * will have their extra components ignored.
+	 * will have their extra components ignored. A filename with a
+	 * compressed suffix (see {@link TextCodecs}) is compressed on a
+	 * pipeline thread while the text is formatted. Values are written
+	 * with the fewest digits that read back to the same double.
 	 * @param filename Name of output file.
 	 * @param alg The algebra that can access values from the data set. 
 	 * @param data The data set to save to disk.
@@ -54,77 +67,371 @@ public class PipeToTextWriter {
 	
 		void writeAs(String filename, T alg, DimensionedDataSource<U> data)
 	{
-		FileWriter fw = null;
+		writeAs(filename, alg, data, 1);
+	}
+
+	/**
+	 * Write a data set into NMRPipe's PipeToText format using multiple
+	 * threads. The grid is split into contiguous runs of points that are
+	 * formatted into their own buffers in parallel. The buffers are
+	 * written in order so the file is byte for byte the same as the one
+	 * the single threaded writer makes.
+	 * @param filename Name of output file.
+	 * @param alg The algebra that can access values from the data set. 
+	 * @param data The data set to save to disk. Data not held in array storage
+	 *   is written serially since other storages are not safe to read from
+	 *   several threads.
+	 * @param numThreads The number of formatting threads. 1 or less writes serially.
+	 */
+	public static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		void writeAs(String filename, T alg, DimensionedDataSource<U> data, int numThreads)
+	{
+		try {
+			
+			write(filename, alg, data, numThreads);
+			
+		} catch (IOException e) {
+			
+			System.out.println("IO Exception: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Like writeAs() but a failed write is thrown to the caller.
+	 */
+	static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		void write(String filename, T alg, DimensionedDataSource<U> data, int numThreads)
+		
+			throws IOException
+	{
+		FlightEvents.DatasetCompleted completed = new FlightEvents.DatasetCompleted();
+		
+		completed.begin();
 		
-		BufferedWriter bw = null;
+		OutputStream os = null;
 
 		try {
 
-			fw = new FileWriter(filename);
+			FlightEvents.FileOpened opened = new FlightEvents.FileOpened();
 			
-			bw = new BufferedWriter(fw);
+			opened.begin();
 			
-			long[] dims = DataSourceUtils.dimensions(data);
+			os = TextCodecs.openOutputStream(filename);
 			
-			SamplingCartesianIntegerGrid sampling =
-					
-					new SamplingCartesianIntegerGrid(dims);
+			opened.report(filename, "pipe2txt output", 0);
+			
+			long bytes;
+			
+			if (numThreads <= 1 || !ReaderStorage.isArray(data.rawData()))
+				
+				bytes = writeSerially(os, alg, data);
+			
+			else
+				
+				bytes = writeInParallel(os, alg, data, numThreads);
 			
-			SamplingIterator<IntegerIndex> iter = sampling.iterator();
+			os.close();
 			
-			U value = alg.construct();
+			os = null;
 			
-			IntegerIndex idx = new IntegerIndex(dims.length);
+			completed.report(filename, "pipe2txt output", bytes, data.numElements());
 			
-			while (iter.hasNext()) {
+		} finally {
+			
+			try {
 				
-				iter.next(idx);
-
-				data.get(idx, value);
+				if (os != null) os.close();
 				
-				double[] values = value.getAsDoubleArray();
+			} catch (Exception e) {
 				
-				StringBuilder b = new StringBuilder();
+				;
+			}
+		}
+	}
+	
+	private static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		long writeSerially(OutputStream os, T alg, DimensionedDataSource<U> data)
+	
+			throws IOException
+	{
+		LineFormatter<U> formatter = new LineFormatter<>(alg, data);
+		
+		byte[] buffer = new byte[Math.max(BUFFER_SIZE, 4 * formatter.maxLineLength)];
+		
+		long linesPerBuffer = buffer.length / formatter.maxLineLength;
+		
+		long bytes = 0;
+		
+		for (long first = 0; first < formatter.numPoints; first += linesPerBuffer) {
+			
+			long last = Math.min(formatter.numPoints, first + linesPerBuffer);
+			
+			int count = formatter.format(first, last, buffer);
+			
+			os.write(buffer, 0, count);
+			
+			bytes += count;
+		}
+		
+		return bytes;
+	}
+	
+	private static <T extends Algebra<T,U>, U extends GetAsDoubleArray>
+	
+		long writeInParallel(OutputStream os, T alg, DimensionedDataSource<U> data, int numThreads)
+	
+			throws IOException
+	{
+		LineFormatter<U> sizing = new LineFormatter<>(alg, data);
+		
+		long numPoints = sizing.numPoints;
+		
+		int bufferSize = RANGE_POINTS * sizing.maxLineLength;
+		
+		// a fixed pool of buffers bounds memory use: each range in flight owns one
+		
+		int inFlight = 2 * numThreads;
+		
+		ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+		
+		ArrayDeque<Future<Integer>> pending = new ArrayDeque<>();
+		
+		ArrayDeque<byte[]> pendingBuffers = new ArrayDeque<>();
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+			
+			Thread t = new Thread(runnable, "pipe2txt writer");
+			
+			t.setDaemon(true);
+			
+			return t;
+		});
+		
+		ThreadLocal<LineFormatter<U>> formatters = ThreadLocal.withInitial(() -> new LineFormatter<>(alg, data));
+		
+		long bytes = 0;
+		
+		try {
+			
+			long first = 0;
+			
+			while (first < numPoints || !pending.isEmpty()) {
 				
-				// TODO: Am I reporting the x,y,z,a,... grid in correct order? or do I need to reverse them? 
+				// keep the workers busy
 				
-				for (int i = 0; i < dims.length; i++) {
+				while (first < numPoints && pending.size() < inFlight) {
 					
-					long pos = idx.get(i);
+					final long start = first;
 					
-					if (i != 0) {
-						
-						// flip all dimensions except X: based on a conversation with Frank Delaglio.
-						
-						pos = dims[i] - 1 - pos;
-					}
+					final long end = Math.min(numPoints, first + RANGE_POINTS);
+					
+					final byte[] buffer = freeBuffers.isEmpty() ? new byte[bufferSize] : freeBuffers.pop();
+					
+					pending.add(pool.submit(() -> formatters.get().format(start, end, buffer)));
 					
-					pos = pos + 1;  // plus one because NMRPipe's pipe2text.tcl has 1-based origins for array data
+					pendingBuffers.add(buffer);
 					
-					b.append(' ');
-					b.append(pos); 
+					first = end;
 				}
 				
-				// pipe's data format is limited to reals and complexes so write no more than 2 values
+				// write the oldest range as soon as it is done
 				
-				for (int i = 0; i < Math.min(2, values.length); i++) {
+				int count = pending.remove().get();
 				
-					b.append(' ');
-					b.append(values[i]);
-				}
+				byte[] buffer = pendingBuffers.remove();
+				
+				os.write(buffer, 0, count);
 				
-				b.append('\n');
+				bytes += count;
+				
+				freeBuffers.push(buffer);
+			}
+			
+			return bytes;
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			throw new IOException("interrupted while writing text");
+			
+		} catch (ExecutionException e) {
+			
+			throw new IOException("failure while formatting text: " + e.getCause(), e.getCause());
+			
+		} finally {
+			
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Formats runs of grid points into NMRPipe text lines. Points are
+	 * numbered in the order SamplingCartesianIntegerGrid visits them
+	 * (the first dimension varies fastest). That is also the element
+	 * order of the storage behind an NdData (what DimensionedStorage
+	 * allocates) so for those data sets values are pulled straight from
+	 * the backing IndexedDataSource without any multidimensional index
+	 * to offset conversions.
+	 */
+	private static class LineFormatter<U extends GetAsDoubleArray> {
+		
+		private final DimensionedDataSource<U> data;
+		
+		private final IndexedDataSource<U> raw;
+		
+		private final long[] dims;
+		
+		private final long numPoints;
+		
+		private final int maxLineLength;
+		
+		private final U value;
+		
+		private final ComponentReader<U> components;
+		
+		private final double[] values = new double[2];
+		
+		private final IntegerIndex idx;
+		
+		// the coordinates as written: flipped and shifted to 1-based origins
+		
+		private final long[] labels;
+		
+		<T extends Algebra<T,U>>
+		
+			LineFormatter(T alg, DimensionedDataSource<U> data)
+		{
+			this.data = data;
+			
+			this.dims = DataSourceUtils.dimensions(data);
+			
+			long n = 1;
+			
+			for (int i = 0; i < dims.length; i++) {
+				
+				n *= dims[i];
+			}
+			
+			this.numPoints = n;
+			
+			if (data instanceof NdData && data.rawData().size() == numPoints)
+				
+				this.raw = data.rawData();
+			
+			else
+				
+				this.raw = null;
+			
+			this.maxLineLength = dims.length * (NumberFormatter.MAX_LONG_CHARS + 1) + 2 * (NumberFormatter.MAX_DOUBLE_CHARS + 1) + 1;
+			
+			this.value = alg.construct();
+			
+			this.components = ComponentReader.of(value);
+			
+			this.idx = new IntegerIndex(dims.length);
+			
+			this.labels = new long[dims.length];
+		}
+		
+		/**
+		 * Format the points numbered first (inclusive) to last (exclusive).
+		 * The buffer must hold (last - first) * maxLineLength bytes.
+		 * 
+		 * @return The number of bytes written to the buffer.
+		 */
+		int format(long first, long last, byte[] buffer) {
+			
+			// TODO: Am I reporting the x,y,z,a,... grid in correct order? or do I need to reverse them? 
+			
+			long remainder = first;
+			
+			for (int i = 0; i < dims.length; i++) {
+				
+				long pos = remainder % dims[i];
+				
+				remainder /= dims[i];
+				
+				if (i != 0) {
+					
+					// flip all dimensions except X: based on a conversation with Frank Delaglio.
+					
+					pos = dims[i] - 1 - pos;
+				}
 
-				bw.write(b.toString());
+				labels[i] = pos + 1;  // plus one because NMRPipe's pipe2text.tcl has 1-based origins for array data
 			}
 			
-			bw.close();
+			int count = 0;
 			
-			fw.close();
+			for (long p = first; p < last; p++) {
 			
-		} catch (IOException e) {
+				if (raw != null) {
+					
+					raw.get(p, value);
+				}
+				else {
+					
+					for (int i = 0; i < dims.length; i++) {
+						
+						idx.set(i, (i == 0) ? labels[i] - 1 : dims[i] - labels[i]);
+					}
+					
+					data.get(idx, value);
+				}
+				
+				// pipe's data format is limited to reals and complexes so write no more than 2 values
+				
+				int numValues = components.read(value, values);
+				
+				for (int i = 0; i < dims.length; i++) {
+					
+					buffer[count++] = ' ';
+					
+					count = NumberFormatter.formatLong(labels[i], buffer, count);
+				}
+				
+				for (int i = 0; i < numValues; i++) {
+				
+					buffer[count++] = ' ';
+					
+					count = NumberFormatter.formatDouble(values[i], buffer, count);
+				}
+				
+				buffer[count++] = '\n';
+				
+				// move to the next grid point: X counts up from 1 and the
+				//   flipped dimensions count down from their size
+				
+				if (dims.length > 0) {
+					
+					if (labels[0] < dims[0]) {
+						
+						labels[0]++;
+					}
+					else {
+						
+						labels[0] = 1;
+						
+						for (int i = 1; i < dims.length; i++) {
+							
+							if (labels[i] > 1) {
+								
+								labels[i]--;
+								
+								break;
+							}
+							
+							labels[i] = dims[i];
+						}
+					}
+				}
+			}
 			
-			System.out.println("IO Exception: " + e.getMessage());
+			return count;
 		}
 	}
 }
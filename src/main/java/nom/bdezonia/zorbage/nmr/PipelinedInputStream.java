@@ -0,0 +1,210 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An InputStream that reads its source on a background thread. Blocks of
+ * bytes are handed over through a small bounded queue so the reading
+ * thread can run ahead of the consumer (for instance decompressing while
+ * the consumer parses text) without buffering the whole source.
+ * 
+ * @author Barry DeZonia
+ */
+class PipelinedInputStream extends InputStream {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+	
+	private static final int QUEUE_DEPTH = 8;
+	
+	private static final byte[] END = new byte[0];
+	
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+
+	private final Thread producer;
+	
+	private volatile IOException failure = null;
+	
+	private byte[] block = null;
+	
+	private int blockLength = 0;
+	
+	private int pos = 0;
+	
+	private boolean finished = false;
+	
+	PipelinedInputStream(InputStream source, String threadName) {
+		
+		producer = new Thread(() -> {
+			
+			boolean closed = false;
+			
+			try {
+				
+				readAll(source);
+				
+			} catch (InterruptedException e) {
+				
+				// the consumer closed the stream early
+				
+				closed = true;
+				
+			} catch (IOException e) {
+			
+				failure = e;
+				
+			} catch (RuntimeException | Error e) {
+				
+				failure = new IOException("reading on " + threadName + " failed", e);
+				
+			} finally {
+				
+				try { source.close(); } catch (IOException e) { ; }
+				
+				// the consumer waits for END however the read ended
+				
+				if (closed)
+					
+					queue.offer(END);
+				
+				else {
+					
+					try { queue.put(END); } catch (InterruptedException e) { ; }
+				}
+			}
+			
+		}, threadName);
+		
+		producer.setDaemon(true);
+		
+		producer.start();
+	}
+	
+	private void readAll(InputStream source) throws IOException, InterruptedException {
+		
+		while (true) {
+			
+			byte[] buffer = new byte[BLOCK_SIZE];
+			
+			int count = source.readNBytes(buffer, 0, BLOCK_SIZE);
+			
+			if (count <= 0)
+				
+				return;
+			
+			if (count < BLOCK_SIZE) {
+				
+				byte[] shorter = new byte[count];
+				
+				System.arraycopy(buffer, 0, shorter, 0, count);
+				
+				buffer = shorter;
+			}
+
+			queue.put(buffer);
+		}
+	}
+	
+	private boolean fill() throws IOException {
+		
+		if (finished)
+			
+			return false;
+		
+		while (block == null || pos >= blockLength) {
+			
+			try {
+				
+				block = queue.take();
+				
+			} catch (InterruptedException e) {
+				
+				Thread.currentThread().interrupt();
+				
+				throw new IOException("interrupted while waiting for data");
+			}
+			
+			pos = 0;
+			
+			blockLength = block.length;
+
+			if (block == END) {
+				
+				finished = true;
+				
+				if (failure != null)
+					
+					throw failure;
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public int read() throws IOException {
+
+		if (!fill())
+			
+			return -1;
+		
+		return block[pos++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		
+		if (len == 0)
+			
+			return 0;
+		
+		if (!fill())
+			
+			return -1;
+		
+		int count = Math.min(len, blockLength - pos);
+		
+		System.arraycopy(block, pos, b, off, count);
+		
+		pos += count;
+		
+		return count;
+	}
+	
+	@Override
+	public void close() throws IOException {
+
+		finished = true;
+		
+		producer.interrupt();
+		
+		queue.clear();
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An OutputStream that writes to its sink on a background thread. Filled
+ * blocks of bytes are handed over through a small bounded queue so the
+ * writing thread can keep formatting while the sink (for instance a
+ * compressor) consumes earlier output.
+ * 
+ * @author Barry DeZonia
+ */
+class PipelinedOutputStream extends OutputStream {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+	
+	private static final int QUEUE_DEPTH = 8;
+	
+	private static final byte[] END = new byte[0];
+	
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+
+	private final Thread consumer;
+	
+	private volatile IOException failure = null;
+	
+	private byte[] block = new byte[BLOCK_SIZE];
+	
+	private int count = 0;
+	
+	private boolean closed = false;
+	
+	PipelinedOutputStream(OutputStream sink, String threadName) {
+		
+		consumer = new Thread(() -> {
+			
+			try {
+				
+				while (true) {
+					
+					byte[] buffer = queue.take();
+					
+					if (buffer == END)
+						
+						break;
+					
+					// after a failure keep draining so the writer never blocks forever
+					
+					if (failure == null) {
+
+						try {
+						
+							sink.write(buffer);
+
+						} catch (IOException e) {
+							
+							failure = e;
+							
+						} catch (RuntimeException | Error e) {
+							
+							failure = new IOException("writing on " + threadName + " failed", e);
+						}
+					}
+				}
+
+			} catch (InterruptedException e) {
+				
+				// abandoned by the writer
+				
+			} finally {
+				
+				try {
+
+					sink.close();
+					
+				} catch (IOException e) {
+					
+					if (failure == null)
+						
+						failure = e;
+					
+				} catch (RuntimeException | Error e) {
+					
+					if (failure == null)
+						
+						failure = new IOException("closing on " + threadName + " failed", e);
+				}
+			}
+			
+		}, threadName);
+		
+		consumer.setDaemon(true);
+		
+		consumer.start();
+	}
+	
+	private void handOff(byte[] buffer) throws IOException {
+		
+		// a fresh exception each time so a write failure and the close
+		//   that follows in a try-with-resources are not the same object
+		
+		if (failure != null)
+			
+			throw new IOException(failure.getMessage(), failure);
+		
+		try {
+			
+			queue.put(buffer);
+			
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			
+			throw new IOException("interrupted while writing data");
+		}
+	}
+	
+	private void flushBlock() throws IOException {
+		
+		if (count == 0)
+			
+			return;
+		
+		if (count == BLOCK_SIZE) {
+			
+			handOff(block);
+			
+			block = new byte[BLOCK_SIZE];
+		}
+		else {
+			
+			byte[] partial = new byte[count];
+			
+			System.arraycopy(block, 0, partial, 0, count);
+			
+			handOff(partial);
+		}
+		
+		count = 0;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+
+		if (count == BLOCK_SIZE)
+			
+			flushBlock();
+		
+		block[count++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		
+		while (len > 0) {
+			
+			if (count == BLOCK_SIZE)
+				
+				flushBlock();
+			
+			int n = Math.min(len, BLOCK_SIZE - count);
+			
+			System.arraycopy(b, off, block, count, n);
+			
+			count += n;
+			
+			off += n;
+			
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		
+		flushBlock();
+	}
+	
+	@Override
+	public void close() throws IOException {
+
+		if (closed)
+			
+			return;
+		
+		closed = true;
+		
+		try {
+			
+			flushBlock();
+			
+			handOff(END);
+			
+			consumer.join();
+			
+		} catch (IOException e) {
+			
+			// let the consumer close the sink and exit
+			
+			consumer.interrupt();
+			
+			throw e;
+			
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			
+			consumer.interrupt();
+			
+			throw new IOException("interrupted while finishing output");
+		}
+		
+		if (failure != null)
+			
+			throw failure;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * One 2d (X by Y) plane of a larger data set, as handed out by
+ * {@link PlaneReader}. Values are in zorbage orientation (the Y flip the
+ * readers apply has been done) and are stored X fastest.
+ * <p>
+ * PlaneReader reuses Plane objects: a plane is only valid until the
+ * next plane is read. Use copy() to keep one.
+ * 
+ * @author Barry DeZonia
+ */
+public final class Plane {
+
+	private final long[] dims;
+	
+	private final long[] coordinate;
+	
+	private final float[] values;
+	
+	private long index;
+	
+	Plane(long[] dims) {
+		
+		this.dims = dims;
+		
+		this.coordinate = new long[dims.length];
+		
+		this.values = new float[width() * height()];
+	}
+	
+	/**
+	 * The dimensions of the whole data set this plane is part of.
+	 */
+	public long[] dimensions() {
+		
+		return dims.clone();
+	}
+	
+	/**
+	 * The X size of the plane.
+	 */
+	public int width() {
+		
+		return (int) dims[0];
+	}
+	
+	/**
+	 * The Y size of the plane (1 for 1d data).
+	 */
+	public int height() {
+		
+		return (dims.length > 1) ? (int) dims[1] : 1;
+	}
+	
+	/**
+	 * Where the plane lies in the data set along dimension d. Dimensions
+	 * 0 and 1 (X and Y) span the plane and always return 0.
+	 */
+	public long coordinate(int d) {
+		
+		return coordinate[d];
+	}
+	
+	/**
+	 * The position of the plane in the order the reader hands planes out.
+	 */
+	public long index() {
+		
+		return index;
+	}
+	
+	/**
+	 * The values of the plane. The value at (x,y) is at y * width() + x.
+	 */
+	public float[] values() {
+		
+		return values;
+	}
+	
+	/**
+	 * The value at (x,y).
+	 */
+	public float get(int x, int y) {
+		
+		return values[y * width() + x];
+	}
+	
+	/**
+	 * A copy of this plane that the reader will not overwrite.
+	 */
+	public Plane copy() {
+		
+		Plane plane = new Plane(dims);
+		
+		plane.set(index, coordinate);
+		
+		System.arraycopy(values, 0, plane.values, 0, values.length);
+		
+		return plane;
+	}
+	
+	/**
+	 * Copy the plane into a new 2d data source.
+	 */
+	public DimensionedDataSource<Float32Member> toDataSource() {
+		
+		DimensionedDataSource<Float32Member> data =
+				
+				ReaderStorage.allocate(StorageConstruction.MEM_ARRAY, G.FLT.construct(), new long[] {width(), height()});
+		
+		IndexedDataSource<Float32Member> raw = data.rawData();
+		
+		Float32Member value = G.FLT.construct();
+		
+		for (int i = 0; i < values.length; i++) {
+			
+			value.setV(values[i]);
+			
+			raw.set(i, value);
+		}
+		
+		return data;
+	}
+	
+	void set(long index, long[] coordinate) {
+		
+		this.index = index;
+		
+		System.arraycopy(coordinate, 0, this.coordinate, 0, coordinate.length);
+	}
+}
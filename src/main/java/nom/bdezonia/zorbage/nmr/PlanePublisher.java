@@ -0,0 +1,242 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A reactive streams publisher of the 2d planes of nmrPipe and UCSF data
+ * (see {@link PlaneReader}). Planes are only read when a subscriber has
+ * asked for them so reading never gets ahead of processing and no more
+ * than one plane per outstanding request is held in memory.
+ * <p>
+ * Every subscriber gets its own pass over the file. Planes are read and
+ * delivered on the publisher's executor and each Plane delivered is a
+ * copy that the subscriber may keep.
+ * 
+ * @author Barry DeZonia
+ */
+public final class PlanePublisher implements Flow.Publisher<Plane> {
+
+	private final Supplier<Spliterator<Plane>> planes;
+	
+	private final Executor executor;
+	
+	/**
+	 * A publisher of the planes of a single nmrPipe file.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static PlanePublisher nmrPipe(String filename) {
+		
+		return new PlanePublisher(() -> PlaneReader.nmrPipe(filename));
+	}
+	
+	/**
+	 * A publisher of the planes of an nmrPipe plane series.
+	 * 
+	 * @param filenameFormat A String.format() pattern that is passed the
+	 *   1-based plane number (for instance "/data/test%03d.ft3").
+	 * @return
+	 */
+	public static PlanePublisher nmrPipeSeries(String filenameFormat) {
+		
+		return new PlanePublisher(() -> PlaneReader.nmrPipeSeries(filenameFormat));
+	}
+	
+	/**
+	 * A publisher of the planes of a UCSF file.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static PlanePublisher ucsf(String filename) {
+		
+		return new PlanePublisher(() -> PlaneReader.ucsf(filename));
+	}
+	
+	/**
+	 * Publish planes on the common fork join pool.
+	 * 
+	 * @param planes Makes a new pass over the planes for each subscriber.
+	 */
+	public PlanePublisher(Supplier<Spliterator<Plane>> planes) {
+		
+		this(planes, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Publish planes on the given executor.
+	 * 
+	 * @param planes Makes a new pass over the planes for each subscriber.
+	 * @param executor Runs the reads and the calls to subscribers.
+	 */
+	public PlanePublisher(Supplier<Spliterator<Plane>> planes, Executor executor) {
+		
+		this.planes = Objects.requireNonNull(planes);
+		
+		this.executor = Objects.requireNonNull(executor);
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super Plane> subscriber) {
+		
+		Objects.requireNonNull(subscriber);
+		
+		subscriber.onSubscribe(new PlaneSubscription(subscriber));
+	}
+	
+	private class PlaneSubscription implements Flow.Subscription {
+		
+		private final Flow.Subscriber<? super Plane> subscriber;
+		
+		private final AtomicLong demand = new AtomicLong();
+		
+		// counts the drain requests so only one thread signals the subscriber at a time
+		
+		private final AtomicInteger pending = new AtomicInteger();
+		
+		private volatile boolean cancelled = false;
+		
+		private volatile RuntimeException badRequest = null;
+		
+		// only touched by the draining thread
+		
+		private Spliterator<Plane> spliterator = null;
+		
+		private boolean done = false;
+		
+		PlaneSubscription(Flow.Subscriber<? super Plane> subscriber) {
+			
+			this.subscriber = subscriber;
+		}
+		
+		@Override
+		public void request(long n) {
+			
+			if (n <= 0)
+				
+				badRequest = new IllegalArgumentException("subscribers must request a positive number of planes");
+			
+			else
+				
+				demand.getAndAccumulate(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+			
+			drain();
+		}
+		
+		@Override
+		public void cancel() {
+			
+			cancelled = true;
+		}
+		
+		private void drain() {
+			
+			if (pending.getAndIncrement() == 0)
+				
+				executor.execute(this::run);
+		}
+		
+		private void run() {
+			
+			int missed = 1;
+			
+			do {
+				
+				if (!done && !cancelled)
+					
+					emit();
+				
+				missed = pending.addAndGet(-missed);
+				
+			} while (missed != 0);
+		}
+		
+		private void emit() {
+			
+			if (badRequest != null) {
+				
+				fail(badRequest);
+				
+				return;
+			}
+			
+			try {
+				
+				if (spliterator == null)
+					
+					spliterator = planes.get();
+				
+				long requested = demand.get();
+				
+				long emitted = 0;
+				
+				while (emitted != requested && !cancelled) {
+					
+					if (!spliterator.tryAdvance(plane -> subscriber.onNext(plane.copy()))) {
+						
+						break;
+					}
+					
+					emitted++;
+				}
+				
+				if (requested != Long.MAX_VALUE)
+					
+					demand.addAndGet(-emitted);
+				
+				// planes are SIZED so the end is known without reading ahead
+				
+				if (!cancelled && spliterator.estimateSize() == 0) {
+					
+					done = true;
+					
+					subscriber.onComplete();
+				}
+				
+			} catch (RuntimeException e) {
+				
+				fail(e);
+			}
+		}
+		
+		private void fail(RuntimeException e) {
+			
+			done = true;
+			
+			cancelled = true;
+			
+			subscriber.onError(e);
+		}
+	}
+}
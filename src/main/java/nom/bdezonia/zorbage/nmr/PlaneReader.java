@@ -0,0 +1,717 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import nom.bdezonia.zorbage.nmr.NmrPipeReader.NmrPipeFileReader;
+
+/**
+ * Reads real valued nmrPipe and UCSF data one 2d plane at a time so that
+ * 3d and 4d data can be processed without loading it. Planes are handed
+ * out by Spliterators that split across planes so parallel streams
+ * process planes on all cores:
+ * <pre>
+ *   PlaneReader.stream(PlaneReader.ucsf(filename), true).forEach(plane -> ...);
+ * </pre>
+ * Each Spliterator reuses one {@link Plane} (and one read buffer) so
+ * memory use does not depend upon the size of the data. Planes must be
+ * copied to be kept past the call that receives them.
+ * <p>
+ * nmrPipe planes come in file order (Z fastest, then A). UCSF planes come
+ * in tile order: the planes of one slab of tiles are read together and
+ * handed out before the planes of the next slab.
+ * 
+ * @author Barry DeZonia
+ */
+public final class PlaneReader {
+
+	// do not instantiate
+	
+	private PlaneReader() { }
+	
+	/**
+	 * The planes of a single nmrPipe file: a 2d file or a 3d or 4d
+	 * data stream file.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static Spliterator<Plane> nmrPipe(String filename) {
+		
+		return new PlaneSpliterator(new PipeSource(filename));
+	}
+	
+	/**
+	 * The planes of a 3d or 4d nmrPipe plane series: one 2d file per
+	 * plane numbered from 1 like nmrPipe's test%03d.ft3 convention.
+	 * 
+	 * @param filenameFormat A String.format() pattern that is passed the
+	 *   1-based plane number (for instance "/data/test%03d.ft3").
+	 * @return
+	 */
+	public static Spliterator<Plane> nmrPipeSeries(String filenameFormat) {
+		
+		return new PlaneSpliterator(new PipeSeriesSource(filenameFormat));
+	}
+	
+	/**
+	 * The planes of a UCSF file.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static Spliterator<Plane> ucsf(String filename) {
+		
+		return new PlaneSpliterator(new UcsfSource(filename));
+	}
+	
+	/**
+	 * Make an Iterator of planes.
+	 * 
+	 * @param planes One of the spliterators made by this class.
+	 * @return
+	 */
+	public static Iterator<Plane> iterator(Spliterator<Plane> planes) {
+		
+		return Spliterators.iterator(planes);
+	}
+	
+	/**
+	 * Make a Stream of planes.
+	 * 
+	 * @param planes One of the spliterators made by this class.
+	 * @param parallel True to process planes on all cores.
+	 * @return
+	 */
+	public static Stream<Plane> stream(Spliterator<Plane> planes, boolean parallel) {
+		
+		return StreamSupport.stream(planes, parallel);
+	}
+	
+	private static class PlaneSpliterator implements Spliterator<Plane> {
+		
+		private final Source source;
+		
+		private long next;
+		
+		private final long end;
+		
+		private Cursor cursor;
+		
+		private Plane plane;
+		
+		private final long[] coord;
+		
+		PlaneSpliterator(Source source) {
+			
+			this(source, 0, source.numPlanes);
+		}
+		
+		PlaneSpliterator(Source source, long next, long end) {
+			
+			this.source = source;
+			
+			this.next = next;
+			
+			this.end = end;
+			
+			this.coord = new long[source.dims.length];
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super Plane> action) {
+			
+			if (next >= end)
+				
+				return false;
+			
+			// buffers are made on first use so splits that are never run cost nothing
+			
+			if (plane == null) {
+				
+				plane = new Plane(source.dims);
+				
+				cursor = source.cursor();
+			}
+			
+			source.position(next, coord);
+			
+			plane.set(next, coord);
+			
+			cursor.read(next, coord, plane.values());
+			
+			next++;
+			
+			action.accept(plane);
+			
+			return true;
+		}
+		
+		@Override
+		public Spliterator<Plane> trySplit() {
+			
+			long mid = source.splitPoint(next + (end - next) / 2);
+			
+			if (mid <= next || mid >= end)
+				
+				return null;
+			
+			Spliterator<Plane> prefix = new PlaneSpliterator(source, next, mid);
+			
+			next = mid;
+			
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			
+			return end - next;
+		}
+		
+		@Override
+		public int characteristics() {
+			
+			return ORDERED | SIZED | SUBSIZED | NONNULL;
+		}
+	}
+	
+	/**
+	 * A file or set of files holding planes. Sources are shared by all
+	 * the spliterators split from one another so they keep no read state.
+	 */
+	private static abstract class Source {
+		
+		final long[] dims;
+		
+		final long numPlanes;
+		
+		Source(long[] dims) {
+			
+			this.dims = dims;
+			
+			long count = 1;
+			
+			for (int d = 2; d < dims.length; d++) {
+				
+				count *= dims[d];
+			}
+			
+			this.numPlanes = count;
+			
+			if ((long) dims[0] * (dims.length > 1 ? dims[1] : 1) > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("planes are too large to read");
+		}
+		
+		int width() {
+			
+			return (int) dims[0];
+		}
+		
+		int height() {
+			
+			return (dims.length > 1) ? (int) dims[1] : 1;
+		}
+		
+		/**
+		 * Fill in the Z and A coordinates of the given plane. By default
+		 * planes are in file order, Z fastest.
+		 */
+		void position(long planeIndex, long[] coord) {
+			
+			long remainder = planeIndex;
+			
+			for (int d = 2; d < dims.length; d++) {
+				
+				coord[d] = remainder % dims[d];
+				
+				remainder /= dims[d];
+			}
+		}
+		
+		/**
+		 * Move a split point to a place that does not split a group of
+		 * planes that are read together.
+		 */
+		long splitPoint(long planeIndex) {
+			
+			return planeIndex;
+		}
+		
+		/**
+		 * Make the read state for one spliterator.
+		 */
+		abstract Cursor cursor();
+	}
+	
+	private interface Cursor {
+		
+		void read(long planeIndex, long[] coord, float[] values);
+	}
+	
+	// copy file rows into zorbage orientation: the Y axis is flipped
+	
+	private static void flipRows(FloatBuffer rows, float[] values, int width, int height) {
+		
+		for (int y = 0; y < height; y++) {
+			
+			rows.get(values, (height - 1 - y) * width, width);
+		}
+	}
+	
+	private static NmrPipeFileReader pipeHeader(String filename) {
+		
+		NmrPipeFileReader reader = new NmrPipeFileReader();
+		
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			
+			reader.readHeader(dis);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException reading header of "+filename+": "+e.getMessage());
+		}
+		
+		if (!reader.findDataType().a().equals("real"))
+			
+			throw new IllegalArgumentException("only real valued nmrPipe data can be read by plane");
+		
+		return reader;
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				
+				throw new IOException("unexpected end of file");
+		}
+		
+		buffer.flip();
+	}
+	
+	private static class PipeSource extends Source {
+		
+		private final String filename;
+		
+		private final ByteOrder order;
+		
+		PipeSource(String filename) {
+			
+			this(filename, pipeHeader(filename));
+		}
+		
+		private PipeSource(String filename, NmrPipeFileReader reader) {
+			
+			super(reader.findDims());
+			
+			this.filename = filename;
+			
+			this.order = reader.byteOrder();
+		}
+		
+		@Override
+		Cursor cursor() {
+			
+			int planeFloats = width() * height();
+			
+			MemoryBudget.check(filename, 8L * planeFloats);
+			
+			ByteBuffer buffer = ByteBuffer.allocate(4 * planeFloats).order(order);
+			
+			return (planeIndex, coord, values) -> {
+				
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					
+					buffer.clear();
+					
+					readFully(channel, buffer, NmrPipeReader.HEADER_BYTE_SIZE + 4L * planeFloats * planeIndex);
+					
+					flipRows(buffer.asFloatBuffer(), values, width(), height());
+					
+				} catch (IOException e) {
+					
+					throw new IllegalArgumentException("IOException reading "+filename+": "+e.getMessage());
+				}
+			};
+		}
+	}
+	
+	private static class PipeSeriesSource extends Source {
+		
+		private final String filenameFormat;
+		
+		PipeSeriesSource(String filenameFormat) {
+			
+			super(seriesDims(pipeHeader(String.format(filenameFormat, 1))));
+			
+			this.filenameFormat = filenameFormat;
+		}
+		
+		// the plane files hold 2d dims: Z and A sizes are in the header
+		
+		private static long[] seriesDims(NmrPipeFileReader reader) {
+			
+			long[] planeDims = reader.findDims();
+			
+			int dimCount = reader.dimCount();
+			
+			if (planeDims.length != 2 || dimCount < 3 || dimCount > 4)
+				
+				throw new IllegalArgumentException("not a 3d or 4d nmrPipe plane series");
+			
+			long[] dims = new long[dimCount];
+			
+			dims[0] = planeDims[0];
+			
+			dims[1] = planeDims[1];
+			
+			dims[2] = (long) reader.getHeaderFloat(NmrPipeFileReader.FDF3SIZE);
+			
+			if (dimCount == 4)
+				
+				dims[3] = (long) reader.getHeaderFloat(NmrPipeFileReader.FDF4SIZE);
+			
+			return dims;
+		}
+		
+		@Override
+		Cursor cursor() {
+			
+			int planeFloats = width() * height();
+			
+			MemoryBudget.check(filenameFormat, 8L * planeFloats);
+			
+			ByteBuffer buffer = ByteBuffer.allocate(4 * planeFloats);
+			
+			return (planeIndex, coord, values) -> {
+				
+				String filename = String.format(filenameFormat, planeIndex + 1);
+				
+				NmrPipeFileReader reader = pipeHeader(filename);
+				
+				long[] planeDims = reader.findDims();
+				
+				if (planeDims[0] != width() || planeDims[1] != height())
+					
+					throw new IllegalArgumentException("plane file "+filename+" does not match the size of the series");
+				
+				try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+					
+					buffer.clear();
+					
+					buffer.order(reader.byteOrder());
+					
+					readFully(channel, buffer, NmrPipeReader.HEADER_BYTE_SIZE);
+					
+					flipRows(buffer.asFloatBuffer(), values, width(), height());
+					
+				} catch (IOException e) {
+					
+					throw new IllegalArgumentException("IOException reading "+filename+": "+e.getMessage());
+				}
+			};
+		}
+	}
+	
+	/**
+	 * UCSF planes are spread across tiles. The tiles that cover a slab of
+	 * planes (the planes of one tile along Z and A) are next to each other
+	 * in the file so each cursor reads a slab at a time and hands out its
+	 * planes. Planes are ordered slab by slab and within a slab Z fastest.
+	 */
+	private static class UcsfSource extends Source {
+		
+		private final String filename;
+		
+		private final int headerBytes;
+		
+		// tile sizes and counts in zorbage order, 1 for missing dimensions
+		
+		private final int[] tiles = new int[] {1, 1, 1, 1};
+		
+		private final long[] tileCounts = new long[] {1, 1, 1, 1};
+		
+		private final long[] sizes = new long[] {1, 1, 1, 1};
+		
+		UcsfSource(String filename) {
+			
+			this(filename, ucsfHeader(filename));
+		}
+		
+		private UcsfSource(String filename, UcsfReader.HeaderInfo info) {
+			
+			super(zorbageDims(info));
+			
+			this.filename = filename;
+			
+			int n = info.dimCount;
+			
+			this.headerBytes = 180 + 128 * n;
+			
+			for (int h = 0; h < n; h++) {
+				
+				UcsfReader.AxisHeader axis = info.axisHeaders[h];
+				
+				tiles[n - 1 - h] = axis.tileSize;
+				
+				tileCounts[n - 1 - h] = axis.tileCount;
+				
+				sizes[n - 1 - h] = axis.dataPtCount;
+			}
+		}
+		
+		private static UcsfReader.HeaderInfo ucsfHeader(String filename) {
+			
+			UcsfReader.HeaderInfo info;
+			
+			try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+				
+				info = UcsfReader.readHeader(dis);
+				
+			} catch (IOException e) {
+				
+				throw new IllegalArgumentException("IOException reading header of "+filename+": "+e.getMessage());
+			}
+			
+			if (info == null)
+				
+				throw new IllegalArgumentException("Not a readable UCSF file: "+filename);
+			
+			if (info.dimCount < 1 || info.dimCount > 4)
+				
+				throw new IllegalArgumentException("Unexpected number of dimensions ("+info.dimCount+")");
+			
+			if (info.componentCount != 1)
+				
+				throw new IllegalArgumentException("only real valued UCSF data can be read by plane");
+			
+			for (int h = 0; h < info.dimCount; h++) {
+				
+				if (info.axisHeaders[h].dataPtCount < 1 || info.axisHeaders[h].tileSize < 1)
+					
+					throw new IllegalArgumentException("UCSF axis "+h+" has a bad size or tile size");
+			}
+			
+			return info;
+		}
+		
+		private static long[] zorbageDims(UcsfReader.HeaderInfo info) {
+			
+			long[] dims = new long[info.dimCount];
+			
+			for (int h = 0; h < info.dimCount; h++) {
+				
+				dims[info.dimCount - 1 - h] = info.axisHeaders[h].dataPtCount;
+			}
+			
+			return dims;
+		}
+		
+		// the number of planes of the slab along Z and A
+		
+		private long slabZ(long tz) {
+			
+			return Math.min(tiles[2], sizes[2] - tz * tiles[2]);
+		}
+		
+		private long slabA(long ta) {
+			
+			return Math.min(tiles[3], sizes[3] - ta * tiles[3]);
+		}
+		
+		// a slab of planes: every tile along X and Y for one tile along Z and A
+		
+		private long[] slab(long planeIndex) {
+			
+			long rowOfSlabs = (long) tiles[3] * sizes[2];
+			
+			long ta = planeIndex / rowOfSlabs;
+			
+			long remainder = planeIndex - ta * rowOfSlabs;
+			
+			long na = slabA(ta);
+			
+			long tz = remainder / (na * tiles[2]);
+			
+			long start = ta * rowOfSlabs + tz * na * tiles[2];
+			
+			return new long[] {ta, tz, start};
+		}
+		
+		@Override
+		void position(long planeIndex, long[] coord) {
+			
+			long[] slab = slab(planeIndex);
+			
+			long nz = slabZ(slab[1]);
+			
+			long offset = planeIndex - slab[2];
+			
+			if (dims.length > 2)
+				
+				coord[2] = slab[1] * tiles[2] + offset % nz;
+			
+			if (dims.length > 3)
+				
+				coord[3] = slab[0] * tiles[3] + offset / nz;
+		}
+		
+		@Override
+		long splitPoint(long planeIndex) {
+			
+			return slab(planeIndex)[2];
+		}
+		
+		@Override
+		Cursor cursor() {
+			
+			int width = width();
+			
+			int height = height();
+			
+			int tileFloats = tiles[0] * tiles[1] * tiles[2] * tiles[3];
+			
+			long slabFloats = (long) tiles[2] * tiles[3] * width * height;
+			
+			if (slabFloats > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("tiles are too large to read by plane");
+			
+			MemoryBudget.check(filename, 4L * slabFloats + 8L * tileFloats);
+			
+			float[] slabValues = new float[(int) slabFloats];
+			
+			float[] tileValues = new float[tileFloats];
+			
+			ByteBuffer buffer = ByteBuffer.allocate(4 * tileFloats).order(ByteOrder.BIG_ENDIAN);
+			
+			long[] loaded = new long[] {-1};
+			
+			return (planeIndex, coord, values) -> {
+				
+				long[] slab = slab(planeIndex);
+				
+				long nz = slabZ(slab[1]);
+				
+				long na = slabA(slab[0]);
+				
+				if (loaded[0] != slab[2]) {
+					
+					readSlab(slab[0], slab[1], nz, na, slabValues, tileValues, buffer);
+					
+					loaded[0] = slab[2];
+				}
+				
+				long offset = planeIndex - slab[2];
+				
+				long zOff = offset % nz;
+				
+				long aOff = offset / nz;
+				
+				System.arraycopy(slabValues, (int) ((aOff * tiles[2] + zOff) * width * height), values, 0, width * height);
+			};
+		}
+		
+		// read every tile of a slab and scatter it into planes of zorbage orientation
+		
+		private void readSlab(long ta, long tz, long nz, long na, float[] slabValues, float[] tileValues, ByteBuffer buffer) {
+			
+			int width = width();
+			
+			int height = height();
+			
+			long tilesPerSlab = tileCounts[1] * tileCounts[0];
+			
+			long firstTile = (ta * tileCounts[2] + tz) * tilesPerSlab;
+			
+			try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+				
+				for (long t = 0; t < tilesPerSlab; t++) {
+					
+					long ty = t / tileCounts[0];
+					
+					long tx = t % tileCounts[0];
+					
+					buffer.clear();
+					
+					readFully(channel, buffer, headerBytes + 4L * tileValues.length * (firstTile + t));
+					
+					buffer.asFloatBuffer().get(tileValues);
+					
+					int x0 = (int) (tx * tiles[0]);
+					
+					int count = Math.min(tiles[0], width - x0);
+					
+					// tile values are ordered A, Z, Y, X with X fastest
+					
+					int idx = 0;
+					
+					for (int aOff = 0; aOff < tiles[3]; aOff++) {
+						
+						for (int zOff = 0; zOff < tiles[2]; zOff++) {
+							
+							for (int yOff = 0; yOff < tiles[1]; yOff++, idx += tiles[0]) {
+								
+								long y = ty * tiles[1] + yOff;
+								
+								if (aOff >= na || zOff >= nz || y >= height)
+									
+									continue;
+								
+								int planeStart = (aOff * tiles[2] + zOff) * width * height;
+								
+								int rowStart = planeStart + (int) (height - 1 - y) * width + x0;
+								
+								System.arraycopy(tileValues, idx, slabValues, rowStart, count);
+							}
+						}
+					}
+				}
+				
+			} catch (IOException e) {
+				
+				throw new IllegalArgumentException("IOException reading "+filename+": "+e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,533 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import nom.bdezonia.zorbage.nmr.NmrPipeReader.NmrPipeFileReader;
+
+/**
+ * Reads nmrPipe and UCSF data straight into primitive float storage
+ * without making zorbage data sources, for handing spectra to native
+ * or array based code.
+ * <p>
+ * Values are stored X fastest, then Y, then Z, then A (zorbage order,
+ * see {@link #dimensions(String)}). With flipY set the Y axis is
+ * reversed like the readers do so index y matches the y of a data set
+ * loaded by readAllDatasets(). Without it rows are in file order.
+ * <p>
+ * Complex values are stored as the {@link ComplexLayout} says. UCSF files
+ * can have more than two components: they are laid out the same way.
+ * 
+ * @author Barry DeZonia
+ */
+public final class PrimitiveReader {
+
+	/**
+	 * How the components of complex values are stored.
+	 */
+	public enum ComplexLayout {
+		
+		/** Components next to each other: re0 im0 re1 im1 ... */
+		INTERLEAVED,
+		
+		/** All of the first components then all of the second: re0 re1 ... im0 im1 ... */
+		PLANAR
+	}
+	
+	private static final int CHUNK_BYTES = 1 << 20;
+	
+	// do not instantiate
+	
+	private PrimitiveReader() { }
+
+	/**
+	 * The dimensions of a file's values in zorbage order. For complex
+	 * nmrPipe data the X size counts complex values, not floats.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @return
+	 */
+	public static long[] dimensions(String filename) {
+		
+		return open(filename).dims.clone();
+	}
+	
+	/**
+	 * The number of floats that make up each value of a file: 1 for real
+	 * data and 2 for complex data.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @return
+	 */
+	public static int componentCount(String filename) {
+		
+		return open(filename).components;
+	}
+	
+	/**
+	 * The number of floats {@link #read(String, float[], ComplexLayout, boolean)}
+	 * will fill.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @return
+	 */
+	public static long floatCount(String filename) {
+		
+		return open(filename).floatCount();
+	}
+	
+	/**
+	 * Read a file into the start of an array.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @param dest Receives floatCount() floats.
+	 * @param layout How complex components are stored.
+	 * @param flipY True to store Y in zorbage orientation, false for file orientation.
+	 */
+	public static void read(String filename, float[] dest, ComplexLayout layout, boolean flipY) {
+		
+		read(filename, FloatBuffer.wrap(dest), layout, flipY);
+	}
+	
+	/**
+	 * Read a file into a FloatBuffer starting at its position. The
+	 * position is moved past the floats read.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @param dest Receives floatCount() floats.
+	 * @param layout How complex components are stored.
+	 * @param flipY True to store Y in zorbage orientation, false for file orientation.
+	 */
+	public static void read(String filename, FloatBuffer dest, ComplexLayout layout, boolean flipY) {
+		
+		Source source = open(filename);
+		
+		long count = source.floatCount();
+		
+		if (count > dest.remaining())
+			
+			throw new IllegalArgumentException("buffer has room for "+dest.remaining()+" floats but "+count+" are needed");
+		
+		FloatBuffer out = dest.slice();
+		
+		try {
+			
+			source.read(new Target(out, source.dims, source.components, layout, flipY));
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException reading "+filename+": "+e.getMessage());
+		}
+		
+		dest.position(dest.position() + (int) count);
+	}
+	
+	/**
+	 * Read a file into a ByteBuffer (typically a direct one shared with
+	 * native code) starting at its position. Floats are written in the
+	 * buffer's byte order. The position is moved past the bytes written.
+	 * 
+	 * @param filename An nmrPipe or UCSF file.
+	 * @param dest Receives 4 * floatCount() bytes.
+	 * @param layout How complex components are stored.
+	 * @param flipY True to store Y in zorbage orientation, false for file orientation.
+	 */
+	public static void read(String filename, ByteBuffer dest, ComplexLayout layout, boolean flipY) {
+		
+		FloatBuffer floats = dest.asFloatBuffer();
+		
+		read(filename, floats, layout, flipY);
+		
+		dest.position(dest.position() + 4 * floats.position());
+	}
+	
+	// where each value of the file goes in the destination
+	
+	private static class Target {
+		
+		private final FloatBuffer out;
+		
+		private final long[] dims;
+		
+		private final int components;
+		
+		private final boolean interleaved;
+		
+		private final boolean flipY;
+		
+		private final int numValues;
+		
+		Target(FloatBuffer out, long[] dims, int components, ComplexLayout layout, boolean flipY) {
+			
+			this.out = out;
+			
+			this.dims = dims;
+			
+			this.components = components;
+			
+			this.interleaved = layout == ComplexLayout.INTERLEAVED;
+			
+			this.flipY = flipY && dims.length > 1;
+			
+			long count = 1;
+			
+			for (long dim : dims) {
+				
+				count *= dim;
+			}
+			
+			this.numValues = (int) count;
+		}
+		
+		/**
+		 * The index of the value at the start of a row.
+		 * 
+		 * @param fileY The Y of the row as stored in the file.
+		 * @param plane The index of the row's plane (Z fastest, then A).
+		 */
+		int rowStart(long fileY, long plane) {
+			
+			long height = (dims.length > 1) ? dims[1] : 1;
+			
+			long y = flipY ? height - 1 - fileY : fileY;
+			
+			return (int) ((plane * height + y) * dims[0]);
+		}
+		
+		void put(int valueIndex, int component, float value) {
+			
+			if (interleaved)
+				
+				out.put(valueIndex * components + component, value);
+			
+			else
+				
+				out.put(component * numValues + valueIndex, value);
+		}
+	}
+	
+	private static abstract class Source {
+		
+		long[] dims;
+		
+		int components;
+		
+		long floatCount() {
+			
+			long count = components;
+			
+			for (long dim : dims) {
+				
+				count *= dim;
+			}
+			
+			return count;
+		}
+		
+		abstract void read(Target target) throws IOException;
+	}
+	
+	private static Source open(String filename) {
+		
+		switch (NmrReader.detect(filename)) {
+		
+		case NMRPIPE:
+			
+			return new PipeSource(filename);
+			
+		case UCSF:
+			
+			return new UcsfSource(filename);
+			
+		default:
+			
+			throw new IllegalArgumentException("only nmrPipe and UCSF files can be read into primitive buffers: "+filename);
+		}
+	}
+	
+	/**
+	 * nmrPipe rows hold X reals, or X reals followed by X imaginaries when
+	 * X is complex. Rows are stored Y fastest, then Z, then A.
+	 */
+	private static class PipeSource extends Source {
+		
+		private final String filename;
+		
+		private final ByteOrder order;
+		
+		PipeSource(String filename) {
+			
+			NmrPipeFileReader reader = new NmrPipeFileReader();
+			
+			try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+				
+				reader.readHeader(dis);
+				
+			} catch (IOException e) {
+				
+				throw new IllegalArgumentException("IOException reading header of "+filename+": "+e.getMessage());
+			}
+			
+			this.filename = filename;
+			
+			this.order = reader.byteOrder();
+			
+			this.dims = reader.findDims();
+			
+			String type = reader.findDataType().a();
+			
+			if (type.equals("real")) {
+				
+				this.components = 1;
+			}
+			else if (type.equals("complex") && reader.elemsPerAxis(0) == 2 &&
+						reader.getHeaderFloat(NmrPipeFileReader.FDTRANSPOSED) == 0)
+			{
+				this.components = 2;
+				
+				this.dims[0] /= 2;
+			}
+			else
+				
+				throw new IllegalArgumentException("only real data and data complex along X can be read into primitive buffers");
+			
+			if (floatCount() > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("data is too large for a primitive buffer: "+filename);
+		}
+		
+		@Override
+		void read(Target target) throws IOException {
+			
+			int rowFloats = (int) dims[0] * components;
+			
+			long height = (dims.length > 1) ? dims[1] : 1;
+			
+			long numRows = floatCount() / rowFloats;
+			
+			int rowsPerChunk = (int) Math.max(1, Math.min(numRows, CHUNK_BYTES / (4L * rowFloats)));
+			
+			ByteBuffer buffer = ByteBuffer.allocate(4 * rowFloats * rowsPerChunk).order(order);
+			
+			float[] row = new float[rowFloats];
+			
+			try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+				
+				if (channel.size() < NmrPipeReader.HEADER_BYTE_SIZE + 4 * floatCount())
+					
+					throw new IllegalArgumentException("nmrPipe file is shorter than its header says: "+filename);
+				
+				long position = NmrPipeReader.HEADER_BYTE_SIZE;
+				
+				for (long r = 0; r < numRows; r += rowsPerChunk) {
+					
+					int rows = (int) Math.min(rowsPerChunk, numRows - r);
+					
+					buffer.clear();
+					
+					buffer.limit(4 * rowFloats * rows);
+					
+					while (buffer.hasRemaining()) {
+						
+						if (channel.read(buffer, position + buffer.position()) < 0)
+							
+							throw new IOException("unexpected end of file");
+					}
+					
+					position += buffer.limit();
+					
+					buffer.flip();
+					
+					FloatBuffer floats = buffer.asFloatBuffer();
+					
+					for (int i = 0; i < rows; i++) {
+						
+						floats.get(row);
+						
+						long rowIndex = r + i;
+						
+						int start = target.rowStart(rowIndex % height, rowIndex / height);
+						
+						for (int c = 0; c < components; c++) {
+							
+							int base = c * (int) dims[0];
+							
+							for (int x = 0; x < dims[0]; x++) {
+								
+								target.put(start + x, c, row[base + x]);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * UCSF values are stored in tiles (see {@link UcsfReader}) with the
+	 * components of each value next to each other.
+	 */
+	private static class UcsfSource extends Source {
+		
+		private final String filename;
+		
+		private final UcsfReader.HeaderInfo info;
+		
+		UcsfSource(String filename) {
+			
+			try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+				
+				info = UcsfReader.readHeader(dis);
+				
+			} catch (IOException e) {
+				
+				throw new IllegalArgumentException("IOException reading header of "+filename+": "+e.getMessage());
+			}
+			
+			if (info == null)
+				
+				throw new IllegalArgumentException("Not a readable UCSF file: "+filename);
+			
+			if (info.dimCount < 1 || info.dimCount > 4)
+				
+				throw new IllegalArgumentException("Unexpected number of dimensions ("+info.dimCount+")");
+			
+			this.filename = filename;
+			
+			this.components = Math.max(1, info.componentCount);
+			
+			this.dims = new long[info.dimCount];
+			
+			for (int h = 0; h < info.dimCount; h++) {
+				
+				if (info.axisHeaders[h].dataPtCount < 1 || info.axisHeaders[h].tileSize < 1)
+					
+					throw new IllegalArgumentException("UCSF axis "+h+" has a bad size or tile size");
+				
+				dims[info.dimCount - 1 - h] = info.axisHeaders[h].dataPtCount;
+			}
+			
+			if (floatCount() > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("data is too large for a primitive buffer: "+filename);
+		}
+		
+		@Override
+		void read(Target target) throws IOException {
+			
+			int n = info.dimCount;
+			
+			// tile sizes, tile counts and sizes in zorbage order, 1 for missing dimensions
+			
+			int[] tiles = new int[] {1, 1, 1, 1};
+			
+			long[] tileCounts = new long[] {1, 1, 1, 1};
+			
+			long[] sizes = new long[] {1, 1, 1, 1};
+			
+			for (int h = 0; h < n; h++) {
+				
+				tiles[n - 1 - h] = info.axisHeaders[h].tileSize;
+				
+				tileCounts[n - 1 - h] = info.axisHeaders[h].tileCount;
+				
+				sizes[n - 1 - h] = info.axisHeaders[h].dataPtCount;
+			}
+			
+			int tileFloats = components * tiles[0] * tiles[1] * tiles[2] * tiles[3];
+			
+			byte[] tileBytes = new byte[4 * tileFloats];
+			
+			float[] tileValues = new float[tileFloats];
+			
+			try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), CHUNK_BYTES))) {
+				
+				dis.readNBytes(180 + 128 * n);
+				
+				// tiles are stored A slowest and X fastest
+				
+				for (long ta = 0; ta < tileCounts[3]; ta++) {
+					
+					for (long tz = 0; tz < tileCounts[2]; tz++) {
+						
+						for (long ty = 0; ty < tileCounts[1]; ty++) {
+							
+							for (long tx = 0; tx < tileCounts[0]; tx++) {
+								
+								dis.readFully(tileBytes);
+								
+								ByteBuffer.wrap(tileBytes).asFloatBuffer().get(tileValues);
+								
+								int idx = 0;
+								
+								for (int aOff = 0; aOff < tiles[3]; aOff++) {
+									
+									long a = ta * tiles[3] + aOff;
+									
+									for (int zOff = 0; zOff < tiles[2]; zOff++) {
+										
+										long z = tz * tiles[2] + zOff;
+										
+										for (int yOff = 0; yOff < tiles[1]; yOff++) {
+											
+											long y = ty * tiles[1] + yOff;
+											
+											boolean inBounds = a < sizes[3] && z < sizes[2] && y < sizes[1];
+											
+											int start = inBounds ? target.rowStart(y, a * sizes[2] + z) : 0;
+											
+											for (int xOff = 0; xOff < tiles[0]; xOff++, idx += components) {
+												
+												long x = tx * tiles[0] + xOff;
+												
+												if (!inBounds || x >= sizes[0])
+													
+													continue;
+												
+												for (int c = 0; c < components; c++) {
+													
+													target.put(start + (int) x, c, tileValues[idx + c]);
+												}
+											}
+										}
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
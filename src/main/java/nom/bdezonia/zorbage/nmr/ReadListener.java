@@ -0,0 +1,82 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+/**
+ * Receives timing and size information as a reader works through the
+ * phases of loading a file. Pass one to a reader's readAllDatasets()
+ * method to find out where the time goes when loading slow files.
+ * Readers only report the phases they have: UCSF files have no length
+ * probe and text files have no separate deinterleave step for instance.
+ * <p>
+ * Listeners are called on the reading thread. Readers that parse in
+ * parallel report each phase once, after all of its work is done.
+ * 
+ * @author Barry DeZonia
+ */
+public interface ReadListener {
+
+	/**
+	 * The steps readers go through to load a file.
+	 */
+	enum Phase {
+		
+		/** Reading and checking the file header (or the dimension scan of a text file). */
+		HEADER,
+		
+		/** Finding the size of the numeric data. */
+		LENGTH_PROBE,
+		
+		/** Reading and converting the numeric data. */
+		DECODE,
+		
+		/** Combining separately stored real and imaginary parts into complex values. */
+		DEINTERLEAVE,
+		
+		/** Reversing the Y axis into zorbage orientation. */
+		FLIP,
+		
+		/** Gathering header values into the dataset's metadata. */
+		METADATA,
+		
+		/** Setting the units, axis types and coordinate space of the dataset. */
+		COORDINATE_SPACE
+	}
+	
+	/**
+	 * A listener that ignores every event.
+	 */
+	ReadListener NONE = (source, phase, nanos, bytes, values) -> { };
+	
+	/**
+	 * Called when a reader finishes one phase of loading a file.
+	 * 
+	 * @param source The file or URI being read.
+	 * @param phase The phase that just finished.
+	 * @param nanos The elapsed time of the phase in nanoseconds.
+	 * @param bytes The number of bytes the phase read from the source.
+	 * @param values The number of numeric values the phase produced or touched.
+	 */
+	void phaseCompleted(String source, Phase phase, long nanos, long bytes, long values);
+}
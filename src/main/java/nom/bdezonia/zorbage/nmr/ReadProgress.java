@@ -0,0 +1,130 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far a read has gotten and lets another thread cancel it.
+ * Pass one to a reader's readAllDatasets() method. A user interface can
+ * poll completed() and total() from a timer or subclass this and
+ * override progressed() to be told as the read advances.
+ * <p>
+ * Readers check for cancellation once per block of values (nmrPipe),
+ * once per tile (UCSF) or once per few thousand lines (text). A
+ * cancelled read throws a CancellationException and keeps no reference
+ * to the partially filled data so that memory can be reclaimed at once.
+ * <p>
+ * That only holds for heap storage. Zorbage gives no way to close or
+ * delete file backed (MEM_VIRTUAL) storage, so the backing file of a
+ * cancelled or failed MEM_VIRTUAL load stays on disk until zorbage
+ * removes it itself. Dropping the reference is all a reader can do.
+ * 
+ * @author Barry DeZonia
+ */
+public class ReadProgress {
+
+	private volatile boolean cancelled = false;
+	
+	private volatile long total = -1;
+	
+	private final AtomicLong completed = new AtomicLong();
+
+	/**
+	 * Ask the read to stop. The reader notices at its next check.
+	 */
+	public void cancel() {
+		
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if cancel() has been called.
+	 */
+	public boolean isCancelled() {
+		
+		return cancelled;
+	}
+
+	/**
+	 * The amount of work the read will do (in bytes of the source) or -1
+	 * if it is not known (for instance when reading compressed text).
+	 */
+	public long total() {
+		
+		return total;
+	}
+
+	/**
+	 * The amount of work done so far (in bytes of the source).
+	 */
+	public long completed() {
+		
+		return completed.get();
+	}
+	
+	/**
+	 * Called each time the read advances. Readers that parse in parallel
+	 * call this from several threads at once. The default does nothing.
+	 * 
+	 * @param completed The amount of work done so far.
+	 * @param total The total amount of work or -1 if not known.
+	 */
+	protected void progressed(long completed, long total) {
+		
+	}
+	
+	/**
+	 * Start counting a read of the given size.
+	 */
+	void begin(long totalWork) {
+		
+		completed.set(0);
+		
+		total = totalWork;
+		
+		check();
+	}
+
+	/**
+	 * Record work done and stop the read if it has been cancelled.
+	 */
+	void advance(long amount) {
+		
+		progressed(completed.addAndGet(amount), total);
+		
+		check();
+	}
+
+	/**
+	 * Stop the read if it has been cancelled.
+	 */
+	void check() {
+		
+		if (cancelled)
+			
+			throw new CancellationException("read cancelled");
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Cumulative counts and read latencies for one NMR reader. The readers
+ * update these from many threads at once so every counter is a striped
+ * LongAdder. Latencies are kept in a histogram of logarithmic buckets
+ * (eight per power of two) so percentiles are accurate to about 6%.
+ * 
+ * @author Barry DeZonia
+ */
+public final class ReaderMetrics implements ReaderMetricsMXBean {
+
+	private static final ConcurrentHashMap<String, ReaderMetrics> METRICS = new ConcurrentHashMap<>();
+	
+	// bucket layout: values below 8 get their own bucket. Above that each
+	//   power of two is split into 8 sub buckets.
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	private final LongAdder filesRead = new LongAdder();
+	
+	private final LongAdder bytesRead = new LongAdder();
+	
+	private final LongAdder valuesDecoded = new LongAdder();
+	
+	private final LongAdder failures = new LongAdder();
+	
+	private final LongAdder[] latencies = new LongAdder[NUM_BUCKETS];
+	
+	private ReaderMetrics() {
+		
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			
+			latencies[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Get the metrics of a reader, creating and registering them with
+	 * the platform MBean server if needed.
+	 * 
+	 * @param reader The reader class (for instance NmrPipeReader.class).
+	 */
+	public static ReaderMetrics forReader(Class<?> reader) {
+		
+		return METRICS.computeIfAbsent(reader.getSimpleName(), ReaderMetrics::register);
+	}
+	
+	private static ReaderMetrics register(String readerName) {
+		
+		ReaderMetrics metrics = new ReaderMetrics();
+		
+		try {
+			
+			ObjectName name = new ObjectName("nom.bdezonia.zorbage.nmr:type=ReaderMetrics,name=" + readerName);
+			
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			
+		} catch (JMException | SecurityException e) {
+			
+			// counting still works when the metrics cannot be published
+			
+			System.out.println("Could not register JMX metrics for " + readerName + ": " + e.getMessage());
+		}
+		
+		return metrics;
+	}
+
+	/**
+	 * Record a successful read.
+	 * 
+	 * @param bytes The number of bytes read.
+	 * @param values The number of values decoded.
+	 * @param nanos The time the read took.
+	 */
+	void succeeded(long bytes, long values, long nanos) {
+		
+		filesRead.increment();
+		
+		bytesRead.add(bytes);
+		
+		valuesDecoded.add(values);
+		
+		latencies[bucket(Math.max(0, nanos))].increment();
+	}
+
+	/**
+	 * Record a failed read.
+	 */
+	void failed() {
+		
+		failures.increment();
+	}
+	
+	@Override
+	public long getFilesRead() {
+		
+		return filesRead.sum();
+	}
+
+	@Override
+	public long getBytesRead() {
+		
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getValuesDecoded() {
+		
+		return valuesDecoded.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		
+		return failures.sum();
+	}
+
+	@Override
+	public double getLatencyP50Millis() {
+		
+		return percentile(0.50) / 1e6;
+	}
+
+	@Override
+	public double getLatencyP99Millis() {
+		
+		return percentile(0.99) / 1e6;
+	}
+	
+	// the latency in nanos below which the given fraction of reads finished
+	
+	private double percentile(double fraction) {
+		
+		long[] counts = new long[NUM_BUCKETS];
+		
+		long total = 0;
+		
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			
+			counts[i] = latencies[i].sum();
+			
+			total += counts[i];
+		}
+		
+		if (total == 0)
+			
+			return 0;
+		
+		long rank = (long) Math.ceil(fraction * total);
+		
+		long seen = 0;
+		
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			
+			seen += counts[i];
+			
+			if (seen >= rank)
+				
+				return (lowerBound(i) + lowerBound(i + 1)) / 2.0;
+		}
+		
+		return lowerBound(NUM_BUCKETS);
+	}
+	
+	private static int bucket(long nanos) {
+		
+		if (nanos < SUB_BUCKETS)
+			
+			return (int) nanos;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		
+		int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	// the smallest value that lands in a bucket
+	
+	private static double lowerBound(int bucket) {
+		
+		if (bucket < SUB_BUCKETS)
+			
+			return bucket;
+		
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		
+		int sub = bucket % SUB_BUCKETS;
+		
+		return Math.scalb((double) (SUB_BUCKETS + sub), exponent - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+/**
+ * The JMX view of the cumulative activity of one NMR reader. Instances
+ * are registered with the platform MBean server under the name
+ * nom.bdezonia.zorbage.nmr:type=ReaderMetrics,name=(reader class name)
+ * the first time that reader is used.
+ * 
+ * @author Barry DeZonia
+ */
+public interface ReaderMetricsMXBean {
+
+	/**
+	 * The number of files read successfully.
+	 */
+	long getFilesRead();
+
+	/**
+	 * The number of bytes read from successfully read files.
+	 */
+	long getBytesRead();
+
+	/**
+	 * The number of numeric values decoded from successfully read files.
+	 */
+	long getValuesDecoded();
+
+	/**
+	 * The number of reads that failed.
+	 */
+	long getFailures();
+
+	/**
+	 * The median time a successful read took, in milliseconds.
+	 */
+	double getLatencyP50Millis();
+
+	/**
+	 * The 99th percentile of the time a successful read took, in milliseconds.
+	 */
+	double getLatencyP99Millis();
+}
@@ -0,0 +1,96 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.data.DimensionedStorage;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.Storage;
+
+/**
+ * The one place the readers allocate the storage they load data into.
+ * Callers choose the kind of storage: MEM_ARRAY (on heap arrays, the
+ * default), MEM_SPARSE, or MEM_VIRTUAL (file backed storage that keeps
+ * only a small cache on the heap). Zorbage can not release file backed
+ * storage early (see {@link ReadProgress}).
+ * 
+ * @author Barry DeZonia
+ */
+final class ReaderStorage {
+
+	// zorbage keeps its on heap array storages in this package
+	
+	private static final String ARRAY_PACKAGE = "nom.bdezonia.zorbage.storage.array.";
+	
+	// do not instantiate
+	
+	private ReaderStorage() { }
+	
+	/**
+	 * Tell if a list of values is held in on heap arrays. Only those can
+	 * be used from several threads at once. Virtual storage changes its
+	 * page cache on every access and sparse storage changes its tree.
+	 */
+	static boolean isArray(IndexedDataSource<?> list) {
+		
+		return list.getClass().getName().startsWith(ARRAY_PACKAGE);
+	}
+
+	/**
+	 * Check a load against the {@link MemoryBudget}. File backed storage
+	 * does not live on the heap so it is not held to the budget.
+	 * 
+	 * @param source The file being loaded.
+	 * @param storage The kind of storage the load will allocate.
+	 * @param bytes The bytes the load would take as heap arrays.
+	 */
+	static void checkBudget(String source, StorageConstruction storage, long bytes) {
+		
+		if (storage != StorageConstruction.MEM_VIRTUAL)
+			
+			MemoryBudget.check(source, bytes);
+	}
+	
+	/**
+	 * Allocate a list of values.
+	 */
+	static <U extends Allocatable<U>>
+	
+		IndexedDataSource<U> allocate(StorageConstruction storage, U type, long numElements)
+	{
+		return Storage.allocate(storage, type, numElements);
+	}
+	
+	/**
+	 * Allocate a multidimensional grid of values.
+	 */
+	static <U extends Allocatable<U>>
+	
+		DimensionedDataSource<U> allocate(StorageConstruction storage, U type, long[] dims)
+	{
+		return DimensionedStorage.allocate(type, storage, dims);
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
+import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.type.complex.float16.ComplexFloat16Member;
+import nom.bdezonia.zorbage.type.complex.float32.ComplexFloat32Member;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.real.float16.Float16Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * Smaller in memory forms for the 32-bit float data of nmrPipe and UCSF
+ * files. Pass one to a reader's readAllDatasets() method to hold a large
+ * spectrum in half the memory.
+ * <p>
+ * The file is decoded to 32-bit floats first and then converted so the
+ * peak memory of a load still includes the 32-bit copy. The memory budget
+ * is checked again before the 16-bit copy is allocated. The copy is made
+ * in the storage the load was given so it can be file backed too, and
+ * the conversion can be cancelled through the load's ReadProgress.
+ * Zorbage has no complex 16-bit integer type so complex data is always
+ * stored as complex half floats. Quaternion and octonion UCSF data is
+ * left as is.
+ * 
+ * @author Barry DeZonia
+ */
+public enum ReducedPrecision {
+
+	/**
+	 * IEEE half precision floats. About three significant digits. Values
+	 * are divided by a power of two so the largest magnitude in the data
+	 * fits well inside the half range (65504). Multiply a stored value by
+	 * the SCALE_KEY metadata value to get back the original float.
+	 */
+	FLOAT16,
+	
+	/**
+	 * 16-bit integers scaled so the largest magnitude in the data maps
+	 * to 32767. Multiply a stored value by the SCALE_KEY metadata value
+	 * to get back the original float. NaNs are stored as 0.
+	 */
+	SCALED_INT16;
+	
+	/**
+	 * The metadata key of the factor that turns reduced values back into
+	 * the values in the file.
+	 */
+	public static final String SCALE_KEY = "reduced precision scale";
+	
+	// half floats reach 65504 so data scaled into [2^14, 2^15) has room
+	//   for rounding and keeps small values out of the subnormal range
+	
+	private static final int HALF_EXPONENT = 14;
+	
+	// values converted between checks for cancellation
+	
+	private static final long CHECK_MASK = (1 << 20) - 1;
+	
+	/**
+	 * Convert the 32-bit float data sets of a bundle. Data sets of other
+	 * types are passed through.
+	 * 
+	 * @param bundle The data sets a reader loaded.
+	 * @param progress Checked for cancellation while converting.
+	 * @param storage The kind of storage the 16-bit copies are made in.
+	 */
+	DataBundle reduce(DataBundle bundle, ReadProgress progress, StorageConstruction storage) {
+		
+		DataBundle result = new DataBundle();
+		
+		for (DimensionedDataSource<Float32Member> ds : bundle.flts) {
+			
+			if (this == FLOAT16)
+				
+				result.hlfs.add(toFloat16(ds, progress, storage));
+			
+			else
+				
+				result.int16s.add(toScaledInt16(ds, progress, storage));
+		}
+		
+		for (DimensionedDataSource<ComplexFloat32Member> ds : bundle.cflts) {
+			
+			result.chlfs.add(toComplexFloat16(ds, progress, storage));
+		}
+		
+		result.qflts.addAll(bundle.qflts);
+		
+		result.oflts.addAll(bundle.oflts);
+		
+		return result;
+	}
+	
+	private static
+	
+		DimensionedDataSource<Float16Member>
+		
+			toFloat16(DimensionedDataSource<Float32Member> src, ReadProgress progress, StorageConstruction storage)
+	{
+		Float16Member b = G.HLF.construct();
+		
+		checkBudget(src, storage, b, 1);
+		
+		DimensionedDataSource<Float16Member> dst =
+				
+				ReaderStorage.allocate(storage, b, dims(src));
+		
+		IndexedDataSource<Float32Member> in = src.rawData();
+		
+		IndexedDataSource<Float16Member> out = dst.rawData();
+		
+		Float32Member a = G.FLT.construct();
+		
+		double max = 0;
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			max = largest(max, a.v());
+		}
+		
+		double scale = halfScale(max);
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			b.setV((float) (a.v() / scale));
+			
+			out.set(i, b);
+			
+			if ((i & CHECK_MASK) == 0)
+				
+				progress.check();
+		}
+		
+		copyDescription(src, dst);
+		
+		dst.metadata().putDouble(SCALE_KEY, scale);
+		
+		return dst;
+	}
+	
+	private static
+	
+		DimensionedDataSource<SignedInt16Member>
+		
+			toScaledInt16(DimensionedDataSource<Float32Member> src, ReadProgress progress, StorageConstruction storage)
+	{
+		SignedInt16Member b = G.INT16.construct();
+		
+		checkBudget(src, storage, b, 1);
+		
+		DimensionedDataSource<SignedInt16Member> dst =
+				
+				ReaderStorage.allocate(storage, b, dims(src));
+		
+		IndexedDataSource<Float32Member> in = src.rawData();
+		
+		IndexedDataSource<SignedInt16Member> out = dst.rawData();
+		
+		Float32Member a = G.FLT.construct();
+		
+		double max = 0;
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			max = largest(max, a.v());
+		}
+		
+		double scale = (max == 0) ? 1 : max / Short.MAX_VALUE;
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			double v = a.v() / scale;
+			
+			if (Double.isNaN(v))
+				
+				v = 0;
+			
+			v = Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, v));
+			
+			b.setV((int) Math.round(v));
+			
+			out.set(i, b);
+			
+			if ((i & CHECK_MASK) == 0)
+				
+				progress.check();
+		}
+		
+		copyDescription(src, dst);
+		
+		dst.metadata().putDouble(SCALE_KEY, scale);
+		
+		return dst;
+	}
+	
+	private static
+	
+		DimensionedDataSource<ComplexFloat16Member>
+		
+			toComplexFloat16(DimensionedDataSource<ComplexFloat32Member> src, ReadProgress progress, StorageConstruction storage)
+	{
+		ComplexFloat16Member b = G.CHLF.construct();
+		
+		checkBudget(src, storage, b, 2);
+		
+		DimensionedDataSource<ComplexFloat16Member> dst =
+				
+				ReaderStorage.allocate(storage, b, dims(src));
+		
+		IndexedDataSource<ComplexFloat32Member> in = src.rawData();
+		
+		IndexedDataSource<ComplexFloat16Member> out = dst.rawData();
+		
+		ComplexFloat32Member a = G.CFLT.construct();
+		
+		double max = 0;
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			max = largest(max, a.r());
+			
+			max = largest(max, a.i());
+		}
+		
+		double scale = halfScale(max);
+		
+		for (long i = 0; i < in.size(); i++) {
+			
+			in.get(i, a);
+			
+			b.setR((float) (a.r() / scale));
+			
+			b.setI((float) (a.i() / scale));
+			
+			out.set(i, b);
+			
+			if ((i & CHECK_MASK) == 0)
+				
+				progress.check();
+		}
+		
+		copyDescription(src, dst);
+		
+		dst.metadata().putDouble(SCALE_KEY, scale);
+		
+		return dst;
+	}
+	
+	// infinities would make every finite value zero so they are left out
+	//   of the range and saturate (or stay infinite) instead
+	
+	private static double largest(double max, double value) {
+		
+		double v = Math.abs(value);
+		
+		if (v > max && !Double.isInfinite(v))
+			
+			return v;
+		
+		return max;
+	}
+	
+	// a power of two so the division itself loses no precision
+	
+	private static double halfScale(double max) {
+		
+		if (max == 0)
+			
+			return 1;
+		
+		return Math.scalb(1.0, Math.getExponent(max) - HALF_EXPONENT);
+	}
+	
+	// the 32-bit data is still live while the 16-bit copy is made
+	
+	private static void checkBudget(DimensionedDataSource<?> src, StorageConstruction storage, Object value, int componentCount) {
+		
+		long bytes = src.rawData().size() * MemoryBudget.bytesPerValue(value, componentCount);
+		
+		ReaderStorage.checkBudget(src.getSource(), storage, bytes);
+	}
+	
+	private static long[] dims(DimensionedDataSource<?> ds) {
+		
+		long[] dims = new long[ds.numDimensions()];
+		
+		for (int i = 0; i < dims.length; i++) {
+			
+			dims[i] = ds.dimension(i);
+		}
+		
+		return dims;
+	}
+	
+	private static void copyDescription(DimensionedDataSource<?> src, DimensionedDataSource<?> dst) {
+		
+		dst.metadata().merge(src.metadata());
+		
+		dst.setName(src.getName());
+		
+		dst.setSource(src.getSource());
+		
+		dst.setValueType(src.getValueType());
+		
+		dst.setValueUnit(src.getValueUnit());
+		
+		for (int i = 0; i < src.numDimensions(); i++) {
+			
+			dst.setAxisType(i, src.getAxisType(i));
+			
+			dst.setAxisUnit(i, src.getAxisUnit(i));
+		}
+		
+		// the reader spaces look values up in the data they were made for
+		//   so they are rebuilt on dst to let the 32-bit data be freed
+		
+		CoordinateSpace space = src.getCoordinateSpace();
+		
+		if (space instanceof UcsfReader.UcsfSpace)
+			
+			space = new UcsfReader.UcsfSpace(dst);
+		
+		else if (space instanceof NmrPipeReader.PipeSpace)
+			
+			space = new NmrPipeReader.PipeSpace(dst);
+		
+		dst.setCoordinateSpace(space);
+	}
+}
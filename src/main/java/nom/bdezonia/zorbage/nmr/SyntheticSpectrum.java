@@ -0,0 +1,608 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Generates realistic looking NMR spectra (Lorentzian peaks on top of
+ * gaussian noise) and writes them as nmrPipe or UCSF files of any size.
+ * Output is fully determined by the seed so the same spectrum can be
+ * regenerated for benchmarks and tests without storing data files.
+ * Values are computed one row at a time so memory use does not depend
+ * on the size of the spectrum.
+ * <p>
+ * Dimensions are given in zorbage order: dimension 0 is the directly
+ * detected (X) axis, then Y, Z and A.
+ * 
+ * @author Barry DeZonia
+ */
+public class SyntheticSpectrum {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	// per axis (X, Y, Z, A) header values
+	
+	private static final String[] LABELS = new String[] {"HN", "N15", "C13", "CA"};
+	
+	private static final float[] OBS_FREQS = new float[] {600.13f, 60.81f, 150.90f, 150.90f};
+	
+	private static final float[] SWEEP_WIDTHS = new float[] {8000f, 2000f, 6000f, 6000f};
+	
+	private static final float[] CARRIERS = new float[] {4.7f, 118.0f, 56.0f, 56.0f};
+	
+	private final long seed;
+	
+	private final long[] dims;
+	
+	private final double noiseLevel;
+	
+	private final float[] amplitudes;
+	
+	// absorptive Lorentzian line shape of every peak along every axis
+	
+	private final float[][][] absorptive;
+	
+	// dispersive line shape of every peak along X: the imaginary part of complex data
+	
+	private final float[][] dispersive;
+	
+	/**
+	 * Define a spectrum with 24 peaks and a noise level of 1 (peak heights
+	 * range up to 1000).
+	 * 
+	 * @param seed The seed that determines every value of the spectrum.
+	 * @param dims The dimensions of the spectrum: 1 to 4 of them.
+	 */
+	public SyntheticSpectrum(long seed, long[] dims) {
+		
+		this(seed, dims, 24, 1.0);
+	}
+	
+	/**
+	 * Define a spectrum.
+	 * 
+	 * @param seed The seed that determines every value of the spectrum.
+	 * @param dims The dimensions of the spectrum: 1 to 4 of them.
+	 * @param numPeaks The number of peaks in the spectrum.
+	 * @param noiseLevel The standard deviation of the noise.
+	 */
+	public SyntheticSpectrum(long seed, long[] dims, int numPeaks, double noiseLevel) {
+		
+		if (dims.length < 1 || dims.length > 4)
+			
+			throw new IllegalArgumentException("spectra must have 1 to 4 dimensions");
+		
+		for (int d = 0; d < dims.length; d++) {
+			
+			if (dims[d] < 1 || dims[d] > Integer.MAX_VALUE)
+				
+				throw new IllegalArgumentException("dimension "+d+" has an illegal size "+dims[d]);
+		}
+		
+		if (numPeaks < 0)
+			
+			throw new IllegalArgumentException("peak count cannot be negative");
+		
+		this.seed = seed;
+		
+		this.dims = dims.clone();
+		
+		this.noiseLevel = noiseLevel;
+		
+		this.amplitudes = new float[numPeaks];
+		
+		this.absorptive = new float[numPeaks][dims.length][];
+		
+		this.dispersive = new float[numPeaks][];
+		
+		Random rng = new Random(seed);
+		
+		for (int p = 0; p < numPeaks; p++) {
+			
+			// heights spread over two decades like a real spectrum
+			
+			amplitudes[p] = (float) (1000 * Math.pow(10, -2 * rng.nextDouble()));
+			
+			for (int d = 0; d < dims.length; d++) {
+				
+				int size = (int) dims[d];
+				
+				double center = size * (0.05 + 0.9 * rng.nextDouble());
+				
+				double halfWidth = 0.5 + 2.5 * rng.nextDouble() + 0.002 * size;
+				
+				float[] shape = new float[size];
+				
+				float[] disp = (d == 0) ? new float[size] : null;
+				
+				for (int i = 0; i < size; i++) {
+					
+					double u = (i - center) / halfWidth;
+					
+					double denom = 1 + u * u;
+					
+					shape[i] = (float) (1 / denom);
+					
+					if (disp != null)
+						
+						disp[i] = (float) (u / denom);
+				}
+				
+				absorptive[p][d] = shape;
+				
+				if (disp != null)
+					
+					dispersive[p] = disp;
+			}
+		}
+	}
+	
+	/**
+	 * The dimensions of the spectrum.
+	 */
+	public long[] dimensions() {
+		
+		return dims.clone();
+	}
+	
+	/**
+	 * Compute a run of values along X.
+	 * 
+	 * @param coord The position of the first value. coord[0] is the starting X.
+	 * @param count The number of values to compute.
+	 * @param re Receives the real (absorptive) values.
+	 * @param im Receives the imaginary (dispersive) values. Can be null.
+	 */
+	public void fillRow(long[] coord, int count, float[] re, float[] im) {
+		
+		int x0 = (int) coord[0];
+		
+		for (int i = 0; i < count; i++) {
+			
+			re[i] = 0;
+			
+			if (im != null)
+				
+				im[i] = 0;
+		}
+		
+		for (int p = 0; p < amplitudes.length; p++) {
+			
+			float factor = amplitudes[p];
+			
+			for (int d = 1; d < dims.length; d++) {
+				
+				factor *= absorptive[p][d][(int) coord[d]];
+			}
+			
+			float[] shape = absorptive[p][0];
+			
+			for (int i = 0; i < count; i++) {
+				
+				re[i] += factor * shape[x0 + i];
+			}
+			
+			if (im != null) {
+				
+				float[] disp = dispersive[p];
+				
+				for (int i = 0; i < count; i++) {
+					
+					im[i] += factor * disp[x0 + i];
+				}
+			}
+		}
+		
+		if (noiseLevel != 0) {
+			
+			long index = 0;
+			
+			for (int d = dims.length - 1; d >= 1; d--) {
+				
+				index = (index + coord[d]) * dims[d - 1];
+			}
+			
+			index += x0;
+			
+			for (int i = 0; i < count; i++) {
+				
+				re[i] += noise(2 * (index + i));
+				
+				if (im != null)
+					
+					im[i] += noise(2 * (index + i) + 1);
+			}
+		}
+	}
+	
+	// Approximately gaussian noise that only depends upon the seed and
+	//   the position. A sum of four uniform values has variance 1/3.
+	
+	private float noise(long position) {
+		
+		long bits = mix(seed ^ mix(position));
+		
+		double sum =
+				((bits       ) & 0xffff) +
+				((bits >>> 16) & 0xffff) +
+				((bits >>> 32) & 0xffff) +
+				((bits >>> 48) & 0xffff);
+		
+		return (float) (noiseLevel * Math.sqrt(3) * (sum / 65536.0 - 2.0));
+	}
+	
+	// the splitmix64 finalizer
+	
+	private static long mix(long z) {
+		
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Write the spectrum as a single nmrPipe file. 1d and 2d spectra make
+	 * ordinary files. 3d and 4d spectra make a data stream file that
+	 * holds every plane.
+	 * 
+	 * @param filename The name of the output file.
+	 * @param complex True if X should be written as complex (real and imaginary) data.
+	 * @param order The byte order of the file.
+	 * @throws IOException
+	 */
+	public void writeNmrPipe(String filename, boolean complex, ByteOrder order) throws IOException {
+		
+		long numPlanes = numPlanes();
+		
+		try (FileChannel channel = create(filename)) {
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+			
+			nmrPipeHeader(buffer, complex, dims.length > 2, 1);
+			
+			for (long plane = 0; plane < numPlanes; plane++) {
+				
+				writePlane(channel, buffer, plane, complex);
+			}
+			
+			drain(channel, buffer);
+		}
+	}
+	
+	/**
+	 * Write a 3d or 4d spectrum as a series of nmrPipe plane files, one
+	 * per 2d plane, like nmrPipe's test%03d.ft3 naming convention.
+	 * 
+	 * @param filenameFormat A String.format() pattern that is passed the
+	 *   1-based plane number (for instance "/data/test%03d.ft3").
+	 * @param complex True if X should be written as complex (real and imaginary) data.
+	 * @param order The byte order of the files.
+	 * @throws IOException
+	 */
+	public void writeNmrPipeSeries(String filenameFormat, boolean complex, ByteOrder order) throws IOException {
+		
+		if (dims.length < 3)
+			
+			throw new IllegalArgumentException("a plane series needs 3 or 4 dimensions");
+		
+		long numPlanes = numPlanes();
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+		
+		for (long plane = 0; plane < numPlanes; plane++) {
+			
+			try (FileChannel channel = create(String.format(filenameFormat, plane + 1))) {
+				
+				nmrPipeHeader(buffer, complex, false, (int) numPlanes);
+				
+				writePlane(channel, buffer, plane, complex);
+				
+				drain(channel, buffer);
+			}
+		}
+	}
+	
+	/**
+	 * Write the spectrum as a real valued UCSF (Sparky) file. UCSF files
+	 * are always big endian.
+	 * 
+	 * @param filename The name of the output file.
+	 * @param tileSizes The tile size along each dimension (in zorbage order).
+	 * @throws IOException
+	 */
+	public void writeUcsf(String filename, int[] tileSizes) throws IOException {
+
+		int n = dims.length;
+		
+		if (tileSizes.length != n)
+			
+			throw new IllegalArgumentException("one tile size is needed per dimension");
+		
+		// UCSF axes are stored slowest first: header axis h is zorbage dimension n-1-h
+		
+		int[] sizes = new int[n];
+		
+		int[] tiles = new int[n];
+		
+		long[] tileCounts = new long[n];
+		
+		long numTiles = 1;
+		
+		for (int h = 0; h < n; h++) {
+			
+			sizes[h] = (int) dims[n - 1 - h];
+			
+			tiles[h] = tileSizes[n - 1 - h];
+			
+			if (tiles[h] < 1)
+				
+				throw new IllegalArgumentException("tile sizes must be positive");
+			
+			tileCounts[h] = (sizes[h] + tiles[h] - 1) / tiles[h];
+			
+			numTiles *= tileCounts[h];
+		}
+		
+		try (FileChannel channel = create(filename)) {
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			
+			ucsfHeader(buffer, sizes, tiles);
+
+			int rowLength = tiles[n - 1];
+			
+			float[] row = new float[rowLength];
+			
+			long rowsPerTile = 1;
+			
+			for (int h = 0; h < n - 1; h++) {
+				
+				rowsPerTile *= tiles[h];
+			}
+			
+			long[] tile = new long[n];
+			
+			long[] offset = new long[n];
+			
+			long[] coord = new long[n];
+			
+			for (long t = 0; t < numTiles; t++) {
+				
+				for (int h = 0; h < n - 1; h++) {
+					
+					offset[h] = 0;
+				}
+				
+				for (long r = 0; r < rowsPerTile; r++) {
+					
+					boolean inBounds = true;
+					
+					for (int h = 0; h < n - 1; h++) {
+						
+						long pos = tile[h] * tiles[h] + offset[h];
+						
+						if (pos >= sizes[h])
+							
+							inBounds = false;
+						
+						coord[n - 1 - h] = pos;
+					}
+
+					long x0 = tile[n - 1] * rowLength;
+					
+					int count = inBounds ? (int) Math.min(rowLength, sizes[n - 1] - x0) : 0;
+					
+					coord[0] = x0;
+					
+					if (count > 0)
+						
+						fillRow(coord, count, row, null);
+					
+					// pad the parts of edge tiles that lie outside the data
+					
+					for (int i = count; i < rowLength; i++) {
+						
+						row[i] = 0;
+					}
+					
+					put(channel, buffer, row, rowLength);
+					
+					increment(offset, tiles, n - 1);
+				}
+				
+				increment(tile, tileCounts, n);
+			}
+			
+			drain(channel, buffer);
+		}
+	}
+	
+	// count up a multidimensional counter with the last position fastest
+	
+	private static void increment(long[] counter, int[] limits, int length) {
+		
+		for (int i = length - 1; i >= 0; i--) {
+			
+			if (++counter[i] < limits[i])
+				
+				return;
+			
+			counter[i] = 0;
+		}
+	}
+	
+	private static void increment(long[] counter, long[] limits, int length) {
+		
+		for (int i = length - 1; i >= 0; i--) {
+			
+			if (++counter[i] < limits[i])
+				
+				return;
+			
+			counter[i] = 0;
+		}
+	}
+	
+	private long numPlanes() {
+		
+		long numPlanes = 1;
+		
+		for (int d = 2; d < dims.length; d++) {
+			
+			numPlanes *= dims[d];
+		}
+		
+		return numPlanes;
+	}
+	
+	// write one 2d plane: each row holds X reals followed by X imaginaries when complex
+	
+	private void writePlane(FileChannel channel, ByteBuffer buffer, long plane, boolean complex) throws IOException {
+		
+		int xSize = (int) dims[0];
+		
+		long ySize = (dims.length > 1) ? dims[1] : 1;
+		
+		float[] re = new float[xSize];
+		
+		float[] im = complex ? new float[xSize] : null;
+		
+		long[] coord = new long[dims.length];
+		
+		long remainder = plane;
+		
+		for (int d = 2; d < dims.length; d++) {
+			
+			coord[d] = remainder % dims[d];
+			
+			remainder /= dims[d];
+		}
+		
+		for (long y = 0; y < ySize; y++) {
+			
+			if (dims.length > 1)
+				
+				coord[1] = y;
+			
+			fillRow(coord, xSize, re, im);
+			
+			put(channel, buffer, re, xSize);
+			
+			if (complex)
+				
+				put(channel, buffer, im, xSize);
+		}
+	}
+	
+	private void nmrPipeHeader(ByteBuffer buffer, boolean complex, boolean stream, int fileCount) {
+		
+		NmrPipeHeader.put(buffer, dims, complex, stream, fileCount,
+							LABELS, OBS_FREQS, SWEEP_WIDTHS, CARRIERS, "synthetic seed " + seed);
+	}
+	
+	private void ucsfHeader(ByteBuffer buffer, int[] sizes, int[] tiles) {
+		
+		int n = sizes.length;
+		
+		buffer.clear();
+		
+		putChars(buffer, 0, "UCSF NMR", 10);
+		
+		buffer.position(10);
+		buffer.put((byte) n);
+		buffer.put((byte) 1);  // component count
+		buffer.put((byte) 0);  // encoding
+		buffer.put((byte) 2);  // file version
+		
+		putChars(buffer, 14, "zorbage", 9);
+		putChars(buffer, 49, "synthetic seed " + seed, 80);
+		
+		for (int h = 0; h < n; h++) {
+			
+			int axis = n - 1 - h;
+			
+			int base = 180 + 128 * h;
+			
+			putChars(buffer, base, LABELS[axis], 6);
+			
+			buffer.putInt(base + 8, sizes[h]);
+			buffer.putInt(base + 16, tiles[h]);
+			buffer.putFloat(base + 20, OBS_FREQS[axis]);
+			buffer.putFloat(base + 24, SWEEP_WIDTHS[axis]);
+			buffer.putFloat(base + 28, CARRIERS[axis]);
+		}
+		
+		buffer.position(180 + 128 * n);
+	}
+	
+	private static void putChars(ByteBuffer buffer, int position, String s, int maxLength) {
+		
+		byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		
+		for (int i = 0; i < Math.min(bytes.length, maxLength); i++) {
+			
+			buffer.put(position + i, bytes[i]);
+		}
+	}
+	
+	private static FileChannel create(String filename) throws IOException {
+		
+		return FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+	
+	private static void put(FileChannel channel, ByteBuffer buffer, float[] values, int count) throws IOException {
+		
+		for (int i = 0; i < count; i++) {
+			
+			if (buffer.remaining() < 4)
+				
+				drain(channel, buffer);
+			
+			buffer.putFloat(values[i]);
+		}
+	}
+	
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		
+		buffer.flip();
+		
+		while (buffer.hasRemaining()) {
+			
+			channel.write(buffer);
+		}
+		
+		buffer.clear();
+	}
+}
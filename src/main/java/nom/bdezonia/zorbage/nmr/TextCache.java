@@ -0,0 +1,633 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import nom.bdezonia.zorbage.sampling.IntegerIndex;
+
+/**
+ * A binary sidecar that saves parsing a pipe2txt file more than once.
+ * When caching is enabled {@link PipeToTextReader} writes the grid it
+ * parses from a text file into a file named like the text file plus
+ * ".zcache". Later reads of the text file skip both text passes and
+ * load the grid from the sidecar with large block reads.
+ * <p>
+ * The sidecar records the size and modification time of the text file
+ * it was made from. A sidecar whose text file has changed since is
+ * ignored and replaced by the next read.
+ * <p>
+ * The sidecar is little endian: a 32 byte header (the magic "ZNMRTXT1",
+ * the text file's size and modification time, the dimension count and
+ * the data column count), the min and max coordinate of each dimension
+ * and then every data column of every grid point as doubles. Grid points
+ * are stored X fastest with Y, Z and A flipped as the reader flips them.
+ * Points missing from the text file are stored as zeros.
+ * <p>
+ * The sidecar is read and written through file channels rather than
+ * memory mappings. Java can not unmap a file on demand and a mapped file
+ * can not be replaced or deleted on Windows.
+ * 
+ * @author Barry DeZonia
+ */
+public final class TextCache {
+
+	/**
+	 * The suffix added to a text file's name to make its sidecar's name.
+	 */
+	public static final String SUFFIX = ".zcache";
+	
+	private static final long MAGIC = 0x5a4e4d5254585431L;  // "ZNMRTXT1"
+	
+	private static final int HEADER_BYTES = 32;
+	
+	// the bytes each thread reads or writes in one call
+	
+	private static final int BLOCK_BYTES = 1 << 18;
+	
+	private static volatile boolean enabled = false;
+	
+	// do not instantiate
+	
+	private TextCache() { }
+
+	/**
+	 * Turn the reading and writing of sidecars on or off. Caching is off
+	 * by default.
+	 */
+	public static void setEnabled(boolean on) {
+		
+		enabled = on;
+	}
+
+	/**
+	 * Whether sidecars are read and written.
+	 */
+	public static boolean isEnabled() {
+		
+		return enabled;
+	}
+	
+	/**
+	 * The name of the sidecar of a text file.
+	 */
+	public static String cacheName(String filename) {
+		
+		return filename + SUFFIX;
+	}
+	
+	/**
+	 * Delete the sidecar of a text file if it has one.
+	 * 
+	 * @return True if a sidecar was deleted.
+	 */
+	public static boolean delete(String filename) {
+		
+		try {
+			
+			return Files.deleteIfExists(Paths.get(cacheName(filename)));
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("IOException deleting "+cacheName(filename)+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Open the sidecar of a text file.
+	 * 
+	 * @return The sidecar or null if caching is off or the text file has
+	 *   no sidecar that is complete and up to date.
+	 */
+	static Reader open(String filename) {
+		
+		if (!enabled)
+			
+			return null;
+		
+		Path path = Paths.get(cacheName(filename));
+		
+		if (!Files.isRegularFile(path))
+			
+			return null;
+		
+		File source = new File(filename);
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (!readFully(channel, header, 0))
+				
+				return null;
+			
+			header.flip();
+			
+			if (header.getLong() != MAGIC || header.getLong() != source.length() || header.getLong() != source.lastModified())
+				
+				return null;
+			
+			int numDims = header.getInt();
+			
+			int numCols = header.getInt();
+			
+			if (numDims < 1 || numCols < 1 || numDims > 64)
+				
+				return null;
+			
+			ByteBuffer bounds = ByteBuffer.allocate(16 * numDims).order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (!readFully(channel, bounds, HEADER_BYTES))
+				
+				return null;
+			
+			bounds.flip();
+			
+			IntegerIndex min = new IntegerIndex(numDims);
+			
+			IntegerIndex max = new IntegerIndex(numDims);
+			
+			long numPoints = 1;
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				min.set(i, bounds.getLong());
+				
+				max.set(i, bounds.getLong());
+				
+				numPoints *= max.get(i) - min.get(i) + 1;
+			}
+			
+			long dataStart = HEADER_BYTES + 16L * numDims;
+			
+			if (channel.size() != dataStart + 8L * numCols * numPoints)
+				
+				return null;
+			
+			return new Reader(path, numDims, numCols, min, max, dataStart, numPoints);
+			
+		} catch (IOException e) {
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Start a sidecar for a text file. The grid is written to a temporary
+	 * file that replaces the sidecar when {@link Writer#finish()} is called.
+	 * 
+	 * @return The new sidecar or null if caching is off or the sidecar
+	 *   can not be written.
+	 */
+	static Writer create(String filename, int numDims, int numCols, IntegerIndex min, IntegerIndex max) {
+		
+		if (!enabled)
+			
+			return null;
+		
+		File source = new File(filename);
+		
+		Path target = Paths.get(cacheName(filename)).toAbsolutePath();
+		
+		Path temp = null;
+		
+		try {
+			
+			temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			
+			long numPoints = 1;
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				numPoints *= max.get(i) - min.get(i) + 1;
+			}
+			
+			long dataStart = HEADER_BYTES + 16L * numDims;
+			
+			ByteBuffer header = ByteBuffer.allocate((int) dataStart).order(ByteOrder.LITTLE_ENDIAN);
+			
+			// the magic is written by finish() so an unfinished sidecar is never valid
+			
+			header.putLong(0);
+			
+			header.putLong(source.length());
+			
+			header.putLong(source.lastModified());
+			
+			header.putInt(numDims);
+			
+			header.putInt(numCols);
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				header.putLong(min.get(i));
+				
+				header.putLong(max.get(i));
+			}
+			
+			header.flip();
+			
+			FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+			
+			try {
+				
+				writeFully(channel, header, 0);
+				
+				// size the file now so points missing at the end read as zeros
+				
+				writeFully(channel, ByteBuffer.allocate(1), dataStart + 8L * numCols * numPoints - 1);
+				
+				return new Writer(temp, target, channel, dataStart, numCols);
+				
+			} catch (IOException e) {
+				
+				channel.close();
+				
+				throw e;
+			}
+			
+		} catch (IOException e) {
+			
+			System.out.println("Could not write text cache " + target + " : " + e.getMessage());
+			
+			if (temp != null)
+				
+				deleteTemp(temp);
+			
+			return null;
+		}
+	}
+	
+	private static void deleteTemp(Path temp) {
+		
+		try {
+			
+			Files.deleteIfExists(temp);
+			
+		} catch (IOException e) {
+			
+			System.out.println("Could not delete unfinished text cache " + temp + " : " + e.getMessage());
+		}
+	}
+	
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+	
+	/**
+	 * A complete and up to date sidecar. The file is opened the first time
+	 * its grid is read and stays open until {@link #close()}.
+	 */
+	static final class Reader {
+		
+		final int numDims;
+		
+		final int numCols;
+		
+		final IntegerIndex min;
+		
+		final IntegerIndex max;
+		
+		final long numPoints;
+		
+		private final Path path;
+		
+		private final long dataStart;
+		
+		private final int stride;
+		
+		private FileChannel channel = null;
+		
+		private Reader(Path path, int numDims, int numCols, IntegerIndex min, IntegerIndex max, long dataStart, long numPoints) {
+			
+			this.path = path;
+			
+			this.numDims = numDims;
+			
+			this.numCols = numCols;
+			
+			this.min = min;
+			
+			this.max = max;
+			
+			this.dataStart = dataStart;
+			
+			this.numPoints = numPoints;
+			
+			this.stride = 8 * numCols;
+		}
+		
+		/**
+		 * The bytes of the sidecar.
+		 */
+		long size() {
+			
+			return dataStart + 8L * numCols * numPoints;
+		}
+		
+		/**
+		 * Whether the sidecar holds the grid a text scan describes.
+		 */
+		boolean matches(int numDims, int numCols, IntegerIndex min, IntegerIndex max) {
+			
+			if (numDims != this.numDims || numCols != this.numCols)
+				
+				return false;
+			
+			for (int i = 0; i < numDims; i++) {
+				
+				if (min.get(i) != this.min.get(i) || max.get(i) != this.max.get(i))
+					
+					return false;
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Start reading grid points. Each thread reading the sidecar uses
+		 * its own block. Points are fastest read in increasing order.
+		 */
+		Block block() {
+			
+			return new Block();
+		}
+		
+		/**
+		 * Close the sidecar file. Call once every block is done with it.
+		 */
+		synchronized void close() {
+			
+			if (channel != null) {
+				
+				try {
+					
+					channel.close();
+					
+				} catch (IOException e) {
+					
+					;
+				}
+				
+				channel = null;
+			}
+		}
+		
+		private synchronized FileChannel channel() throws IOException {
+			
+			if (channel == null)
+				
+				channel = FileChannel.open(path, StandardOpenOption.READ);
+			
+			return channel;
+		}
+		
+		/**
+		 * A run of grid points read from the sidecar at once.
+		 */
+		final class Block {
+			
+			private final long pointsPerBlock = Math.max(1, BLOCK_BYTES / stride);
+			
+			private final ByteBuffer bytes = ByteBuffer.allocate((int) (pointsPerBlock * stride)).order(ByteOrder.LITTLE_ENDIAN);
+			
+			private long first = 0;
+			
+			private long count = 0;
+			
+			/**
+			 * Copy the data columns of a grid point.
+			 * 
+			 * @param point The index of the point with X varying fastest.
+			 * @param columns Receives numCols values.
+			 */
+			void get(long point, double[] columns) {
+				
+				if (point < first || point >= first + count) {
+					
+					first = point;
+					
+					count = Math.min(pointsPerBlock, numPoints - point);
+					
+					bytes.clear().limit((int) (count * stride));
+					
+					try {
+						
+						if (!readFully(channel(), bytes, dataStart + point * stride))
+							
+							throw new EOFException("text cache " + path + " is truncated");
+						
+					} catch (IOException e) {
+						
+						count = 0;
+						
+						throw new UncheckedIOException(e);
+					}
+				}
+				
+				int offset = (int) (point - first) * stride;
+				
+				for (int c = 0; c < columns.length; c++) {
+					
+					columns[c] = bytes.getDouble(offset + 8 * c);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A sidecar being filled in by a parse.
+	 */
+	static final class Writer {
+		
+		private final Path temp;
+		
+		private final Path target;
+		
+		private final FileChannel channel;
+		
+		private final long dataStart;
+		
+		private final int stride;
+		
+		private Writer(Path temp, Path target, FileChannel channel, long dataStart, int numCols) {
+			
+			this.temp = temp;
+			
+			this.target = target;
+			
+			this.channel = channel;
+			
+			this.dataStart = dataStart;
+			
+			this.stride = 8 * numCols;
+		}
+		
+		/**
+		 * Start writing grid points. Each thread filling in the sidecar
+		 * uses its own block and flushes it when done.
+		 */
+		Block block() {
+			
+			return new Block();
+		}
+		
+		/**
+		 * Mark the sidecar complete and move it into place. Every block
+		 * must have been flushed.
+		 */
+		void finish() {
+			
+			try {
+				
+				ByteBuffer magic = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(MAGIC);
+				
+				magic.flip();
+				
+				writeFully(channel, magic, 0);
+				
+				channel.force(false);
+				
+				channel.close();
+				
+				try {
+					
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					
+				} catch (AtomicMoveNotSupportedException e) {
+					
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+				}
+				
+			} catch (IOException e) {
+				
+				System.out.println("Could not write text cache " + target + " : " + e.getMessage());
+				
+				abort();
+			}
+		}
+		
+		/**
+		 * Throw away an unfinished sidecar. Blocks still writing to it
+		 * fail once the file is closed.
+		 */
+		void abort() {
+			
+			try {
+				
+				channel.close();
+				
+			} catch (IOException e) {
+				
+				;
+			}
+			
+			deleteTemp(temp);
+		}
+		
+		/**
+		 * A run of consecutive grid points written to the sidecar at once.
+		 */
+		final class Block {
+			
+			private final int pointsPerBlock = Math.max(1, BLOCK_BYTES / stride);
+			
+			private final ByteBuffer bytes = ByteBuffer.allocate(pointsPerBlock * stride).order(ByteOrder.LITTLE_ENDIAN);
+			
+			private long first = 0;
+			
+			private int count = 0;
+			
+			/**
+			 * Store the data columns of a grid point.
+			 * 
+			 * @param point The index of the point with X varying fastest.
+			 * @param columns The numCols values of the point.
+			 */
+			void put(long point, double[] columns) throws IOException {
+				
+				if (count > 0 && (point != first + count || count == pointsPerBlock))
+					
+					flush();
+				
+				if (count == 0)
+					
+					first = point;
+				
+				int offset = count * stride;
+				
+				for (int c = 0; c < columns.length; c++) {
+					
+					bytes.putDouble(offset + 8 * c, columns[c]);
+				}
+				
+				count++;
+			}
+			
+			/**
+			 * Write the points stored since the last flush.
+			 */
+			void flush() throws IOException {
+				
+				if (count == 0)
+					
+					return;
+				
+				bytes.clear().limit(count * stride);
+				
+				writeFully(channel, bytes, dataStart + first * stride);
+				
+				count = 0;
+			}
+		}
+	}
+}
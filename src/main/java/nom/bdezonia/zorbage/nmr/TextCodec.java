@@ -0,0 +1,56 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format that the NMRPipe text readers and writers can
+ * stream through. Codecs are chosen by file name suffix. Gzip support
+ * is built in. Other formats (zstd for instance) can be added by
+ * implementing this interface around a third party library and passing
+ * an instance to {@link TextCodecs#register(TextCodec)}.
+ * 
+ * @author Barry DeZonia
+ */
+public interface TextCodec {
+
+	/**
+	 * The file name suffix (like ".gz") that identifies this format.
+	 */
+	String suffix();
+	
+	/**
+	 * Wrap a stream of compressed bytes so that reads return uncompressed bytes.
+	 */
+	InputStream decode(InputStream compressed) throws IOException;
+
+	/**
+	 * Wrap a stream so that bytes written to the result are compressed into it.
+	 * Closing the result must finish the compressed stream and close the original.
+	 */
+	OutputStream encode(OutputStream compressed) throws IOException;
+}
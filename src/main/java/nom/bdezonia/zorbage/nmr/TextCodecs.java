@@ -0,0 +1,195 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The registry of compression formats known to the NMRPipe text readers
+ * and writers. Compressed files are decoded and encoded on a separate
+ * pipeline thread so that text parsing and formatting are never blocked
+ * waiting on the codec.
+ * 
+ * @author Barry DeZonia
+ */
+public class TextCodecs {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private static final List<TextCodec> codecs = new CopyOnWriteArrayList<>();
+	
+	static {
+		
+		register(new GzipCodec());
+	}
+	
+	// do not instantiate
+	
+	private TextCodecs() { }
+	
+	/**
+	 * Make a codec available to the text readers and writers. A codec
+	 * registered later takes precedence over an earlier one with the same
+	 * suffix.
+	 * 
+	 * @param codec The codec to add.
+	 */
+	public static void register(TextCodec codec) {
+		
+		codecs.add(0, codec);
+	}
+	
+	/**
+	 * Find the codec whose suffix matches the end of a file name.
+	 * 
+	 * @param filename The name of the file.
+	 * @return The matching codec or null if the file is plain text.
+	 */
+	public static TextCodec forFilename(String filename) {
+		
+		String name = filename.toLowerCase();
+		
+		for (TextCodec codec : codecs) {
+			
+			if (name.endsWith(codec.suffix().toLowerCase()))
+				
+				return codec;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Open a text file for reading, decompressing it on a pipeline
+	 * thread if its name indicates a compressed format.
+	 * 
+	 * @param filename The name of the file.
+	 * @return A reader of the uncompressed text.
+	 * @throws IOException
+	 */
+	public static BufferedReader openReader(String filename) throws IOException {
+		
+		InputStream is = new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE);
+		
+		TextCodec codec = forFilename(filename);
+		
+		if (codec != null) {
+		
+			try {
+				
+				is = new PipelinedInputStream(codec.decode(is), "decode "+filename);
+				
+			} catch (IOException e) {
+				
+				is.close();
+				
+				throw e;
+			}
+		}
+		
+		return new BufferedReader(new InputStreamReader(is, StandardCharsets.US_ASCII), BUFFER_SIZE);
+	}
+
+	/**
+	 * Open a text file for writing, compressing it on a pipeline thread
+	 * if its name indicates a compressed format.
+	 * 
+	 * @param filename The name of the file.
+	 * @return A writer of uncompressed text.
+	 * @throws IOException
+	 */
+	public static BufferedWriter openWriter(String filename) throws IOException {
+		
+		OutputStream os = openOutputStream(filename);
+		
+		return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII), BUFFER_SIZE);
+	}
+
+	/**
+	 * Open a file for writing ASCII bytes, compressing it on a pipeline
+	 * thread if its name indicates a compressed format.
+	 * 
+	 * @param filename The name of the file.
+	 * @return A stream of uncompressed bytes.
+	 * @throws IOException
+	 */
+	public static OutputStream openOutputStream(String filename) throws IOException {
+		
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE);
+		
+		TextCodec codec = forFilename(filename);
+		
+		if (codec != null) {
+		
+			try {
+				
+				os = new PipelinedOutputStream(codec.encode(os), "encode "+filename);
+				
+			} catch (IOException e) {
+				
+				os.close();
+				
+				throw e;
+			}
+		}
+		
+		return os;
+	}
+	
+	private static class GzipCodec implements TextCodec {
+
+		@Override
+		public String suffix() {
+
+			return ".gz";
+		}
+
+		@Override
+		public InputStream decode(InputStream compressed) throws IOException {
+
+			return new GZIPInputStream(compressed, BUFFER_SIZE);
+		}
+
+		@Override
+		public OutputStream encode(OutputStream compressed) throws IOException {
+
+			return new GZIPOutputStream(compressed, BUFFER_SIZE);
+		}
+	}
+}
@@ -28,19 +28,23 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.Allocatable;
 import nom.bdezonia.zorbage.algebra.G;
 import nom.bdezonia.zorbage.algebra.SetFromFloats;
+import nom.bdezonia.zorbage.algebra.StorageConstruction;
 import nom.bdezonia.zorbage.coordinates.CoordinateSpace;
 import nom.bdezonia.zorbage.data.DimensionedDataSource;
-import nom.bdezonia.zorbage.data.DimensionedStorage;
 import nom.bdezonia.zorbage.metadata.MetaDataStore;
 import nom.bdezonia.zorbage.misc.DataBundle;
 import nom.bdezonia.zorbage.sampling.IntegerIndex;
@@ -65,9 +69,11 @@ public class UcsfReader {
 	// do not instantiate
 	
 	private UcsfReader() { }
+	
+	private static final ReaderMetrics METRICS = ReaderMetrics.forReader(UcsfReader.class);
 
 	@SuppressWarnings("unused")
-	private static class HeaderInfo {
+	static class HeaderInfo {
 
 		String fileType = "";
 		int dimCount = 0;
@@ -80,7 +86,7 @@ public class UcsfReader {
 		AxisHeader[] axisHeaders = new AxisHeader[4];  // all null
 	}
 	
-	private static class AxisHeader {
+	static class AxisHeader {
 		
 		String atomName = "";
 		int    dataPtCount = 0;
@@ -103,12 +109,96 @@ public class UcsfReader {
 		DataBundle
 	
 			readAllDatasets(String filename)
+	{
+		return readAllDatasets(filename, ReadListener.NONE);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(String filename, ReadListener listener)
+	{
+		return readAllDatasets(filename, listener, new ReadProgress());
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(String filename, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(filename), new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and the conversion and can cancel them.
+	 * @param storage The kind of storage to load into. The 16-bit copy uses it too.
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(filename, listener, progress, storage), progress, storage);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress)
+	{
+		return readAllDatasets(filename, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(String filename, ReadListener listener, ReadProgress progress, StorageConstruction storage)
 	{
 		try {
 			
 			URI uri = new URI("file", null, new File(filename).getAbsolutePath(), null);
 			
-			return readAllDatasets(uri);
+			return readAllDatasets(uri, listener, progress, storage);
 	
 		} catch (URISyntaxException e) {
 			
@@ -123,19 +213,143 @@ public class UcsfReader {
 	 * @param uri
 	 * @return
 	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(URI uri)
+	{
+		return readAllDatasets(uri, ReadListener.NONE);
+	}
+
+	/**
+	 * 
+	 * @param uri
+	 * @param listener Receives the timing of each phase of the read.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(URI uri, ReadListener listener)
+	{
+		return readAllDatasets(uri, listener, new ReadProgress());
+	}
+
+	/**
+	 * 
+	 * @param uri
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(URI uri, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(uri), new ReadProgress(), StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param uri
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and the conversion and can cancel them.
+	 * @param storage The kind of storage to load into. The 16-bit copy uses it too.
+	 * @param precision The 16-bit form to hold the data in.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+		
+			readAllDatasets(URI uri, ReadListener listener, ReadProgress progress, StorageConstruction storage, ReducedPrecision precision)
+	{
+		return precision.reduce(readAllDatasets(uri, listener, progress, storage), progress, storage);
+	}
+
+	/**
+	 * 
+	 * @param uri
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
+	public static
+	
+		DataBundle
+	
+			readAllDatasets(URI uri, ReadListener listener, ReadProgress progress)
+	{
+		return readAllDatasets(uri, listener, progress, StorageConstruction.MEM_ARRAY);
+	}
+
+	/**
+	 * 
+	 * @param uri
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into (MEM_VIRTUAL keeps the data in a file).
+	 * @return
+	 * @throws java.util.concurrent.CancellationException if the read is cancelled.
+	 */
 	@SuppressWarnings("unchecked")
 	public static <T extends Algebra<T,U>, U>
 	
 		DataBundle
 	
-			readAllDatasets(URI uri)
+			readAllDatasets(URI uri, ReadListener listener, ReadProgress progress, StorageConstruction storage)
+	{
+		return readAllDatasets(uri, null, listener, progress, storage);
+	}
+
+	/**
+	 * Read a source the caller has already opened (see {@link NmrReader}).
+	 * 
+	 * @param uri
+	 * @param stream A stream at the start of the source or null to open it
+	 *   here. It is closed before returning.
+	 * @param listener Receives the timing of each phase of the read.
+	 * @param progress Tracks the read and can cancel it.
+	 * @param storage The kind of storage to load into.
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends Algebra<T,U>, U>
+	
+		DataBundle
+	
+			readAllDatasets(URI uri, InputStream stream, ReadListener listener, ReadProgress progress, StorageConstruction storage)
 	{
 		DataBundle bundle = new DataBundle();
 		
-		Tuple2<T,DimensionedDataSource<U>> result = 
-				
-			(Tuple2<T,DimensionedDataSource<U>>) (Object) readData(uri);
+		Tuple2<T,DimensionedDataSource<U>> result;
+		
+		try {
+			
+			result = (Tuple2<T,DimensionedDataSource<U>>) (Object) readData(uri, stream, listener, progress, storage);
 
+		} catch (CancellationException e) {
+			
+			throw e;
+			
+		} catch (RuntimeException e) {
+			
+			METRICS.failed();
+			
+			throw e;
+		}
+		
+		// readData() records successes: it knows the byte and value counts
+		
+		if (result == null)
+			
+			METRICS.failed();
+		
 		if (result != null) {
 			
 			if (result.a() == G.FLT)
@@ -158,15 +372,147 @@ public class UcsfReader {
 		return bundle;
 	}
 
+	/**
+	 * Calculate the bytes of memory reading a file will allocate: the
+	 * values of the data set plus the buffer that holds one tile. Only
+	 * the header is read.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static
+	
+		long
+		
+			estimateBytes(String filename)
+	{
+		try {
+			
+			URI uri = new URI("file", null, new File(filename).getAbsolutePath(), null);
+			
+			return estimateBytes(uri);
+	
+		} catch (URISyntaxException e) {
+			
+			throw new IllegalArgumentException("Bad name for file: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Calculate the bytes of memory reading a file will allocate: the
+	 * values of the data set plus the buffer that holds one tile. Only
+	 * the header is read.
+	 * 
+	 * @param uri
+	 * @return
+	 */
+	public static
+	
+		long
+		
+			estimateBytes(URI uri)
+	{
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(uri.toURL().openStream()))) {
+			
+			HeaderInfo info = readHeader(dis);
+			
+			if (info == null)
+				
+				throw new IllegalArgumentException("Not a readable UCSF file: "+uri);
+			
+			return storageBytes(info, dimsFromHeader(info));
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("Error: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Print the values of a file's header. Only the header is read.
+	 * 
+	 * @param uri
+	 * @param out
+	 */
+	static void printHeader(URI uri, PrintStream out) {
+		
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(uri.toURL().openStream()))) {
+			
+			HeaderInfo info = readHeader(dis);
+			
+			if (info == null)
+				
+				throw new IllegalArgumentException("Not a readable UCSF file: "+uri);
+			
+			out.println("  format:     UCSF (version " + info.fileVersion + ")");
+			out.println("  components: " + info.componentCount);
+			out.println("  encoding:   " + info.encoding);
+			out.println("  dims:       " + Arrays.toString(dimsFromHeader(info)));
+			out.println("  owner:      " + info.owner);
+			out.println("  date:       " + info.date);
+			out.println("  comment:    " + info.comment);
+			
+			for (int i = 0; i < info.dimCount; i++) {
+				AxisHeader axis = info.axisHeaders[i];
+				out.println("  axis " + i + ": atom " + axis.atomName + ", points " + axis.dataPtCount +
+								", tile size " + axis.tileSize + ", spectrometer freq " + axis.spectrometerFrequency +
+								", spectral width " + axis.spectralWidth + ", transmitter offset " + axis.transmitterOffset);
+			}
+			
+		} catch (IOException e) {
+			
+			throw new IllegalArgumentException("Error: "+e.getMessage());
+		}
+	}
+
 	// --- PRIVATE API ---
 
+	private static
+	
+		long
+		
+			storageBytes(HeaderInfo info, long[] dims)
+	{
+		// values are stored as 1, 2, 4 or 8 floats (real through octonion)
+		
+		long floatsPerValue = Integer.highestOneBit(Math.max(1, info.componentCount));
+		
+		if (floatsPerValue < info.componentCount)
+			
+			floatsPerValue *= 2;
+		
+		long numValues = 1;
+		
+		for (long dim : dims) {
+			
+			numValues *= dim;
+		}
+		
+		long tileFloats = info.componentCount;
+		
+		for (int i = 0; i < info.dimCount; i++) {
+			
+			tileFloats *= info.axisHeaders[i].tileSize;
+		}
+		
+		return 4 * (floatsPerValue * numValues + tileFloats);
+	}
+
 	@SuppressWarnings("unchecked")
 	private static <T extends Algebra<T,U>, U extends Allocatable<U> & SetFromFloats>
 	
 		Tuple2<T,DimensionedDataSource<U>>
 	
-			readData(URI uri)
+			readData(URI uri, InputStream stream, ReadListener listener, ReadProgress progress, StorageConstruction storage)
 	{
+		String source = uri.toString();
+		
+		FlightEvents.DatasetCompleted completed = new FlightEvents.DatasetCompleted();
+		
+		completed.begin();
+		
+		long readStart = System.nanoTime();
+		
 		InputStream is = null;
 
 		BufferedInputStream bis = null;
@@ -175,12 +521,18 @@ public class UcsfReader {
 		
 		try {
 			
-			is = uri.toURL().openStream();
+			FlightEvents.FileOpened opened = new FlightEvents.FileOpened();
+			
+			opened.begin();
+			
+			is = (stream != null) ? stream : uri.toURL().openStream();
 
 			bis = new BufferedInputStream(is);
 
 			dis = new DataInputStream(bis);
 		
+			opened.report(source, "UCSF", "file".equals(uri.getScheme()) ? new File(uri).length() : -1);
+			
 		} catch (MalformedURLException e1) {
 			
 			System.out.println("BAD URI "+e1);
@@ -194,6 +546,12 @@ public class UcsfReader {
 			return null;
 		}
 		
+		long start = System.nanoTime();
+		
+		FlightEvents.HeaderParsed parsed = new FlightEvents.HeaderParsed();
+		
+		parsed.begin();
+		
 		HeaderInfo info = readHeader(dis);
 		
 		if (info == null) {
@@ -203,6 +561,10 @@ public class UcsfReader {
 			return null;
 		}
 
+		parsed.report(source, "UCSF", 180 + 128 * info.dimCount);
+		
+		listener.phaseCompleted(source, ReadListener.Phase.HEADER, System.nanoTime() - start, 180 + 128 * info.dimCount, 0);
+
 		// populate dims from header info
 		
 		long[] dims = dimsFromHeader(info);
@@ -239,14 +601,39 @@ public class UcsfReader {
 			throw new IllegalArgumentException("unexpected component count "+info.componentCount);
 		}
 
-		DimensionedDataSource<U> data = DimensionedStorage.allocate(alg.construct(), dims);
+		// refuse oversized loads before allocating anything
+		
+		try {
+			
+			ReaderStorage.checkBudget(source, storage, storageBytes(info, dims));
+			
+		} catch (MemoryBudgetException e) {
+			
+			try { dis.close(); } catch (Exception e2) { ; }
+			
+			throw e;
+		}
+		
+		DimensionedDataSource<U> data = ReaderStorage.allocate(storage, alg.construct(), dims);
+		
+		long numFloats;
 		
 		try {
 		
-			readNumbers(dis, info, alg, data);
+			start = System.nanoTime();
+			
+			numFloats = readNumbers(dis, info, alg, data, source, progress);
 			
 			dis.close();
 
+			listener.phaseCompleted(source, ReadListener.Phase.DECODE, System.nanoTime() - start, 4 * numFloats, numFloats);
+
+		} catch (CancellationException e4) {
+			
+			try { dis.close(); } catch (Exception e) { ; }
+			
+			throw e4;
+			
 		} catch (IOException e3) {
 
 			System.out.println("IO EXCEPTION while reading numeric data! "+e3);
@@ -256,13 +643,19 @@ public class UcsfReader {
 			return null;
 		}
 
+		start = System.nanoTime();
+		
 		MetaDataStore metadata = metadataFromHeader(info);
 		
 		if (metadata != null)
 		
 			data.metadata().merge(metadata);
 		
-		data.setSource(uri.toString());
+		listener.phaseCompleted(source, ReadListener.Phase.METADATA, System.nanoTime() - start, 0, 0);
+		
+		start = System.nanoTime();
+		
+		data.setSource(source);
 		
 		data.setValueType("Amplitude");
 
@@ -303,10 +696,16 @@ public class UcsfReader {
 			data.setAxisUnit(aPos, "ppm");
 		}
 		
+		listener.phaseCompleted(source, ReadListener.Phase.COORDINATE_SPACE, System.nanoTime() - start, 0, 0);
+		
+		completed.report(source, "UCSF", 180 + 128 * info.dimCount + 4 * numFloats, numFloats);
+		
+		METRICS.succeeded(180 + 128 * info.dimCount + 4 * numFloats, numFloats, System.nanoTime() - readStart);
+		
 		return new Tuple2<>(alg, data);
 	}
 	
-	private static
+	static
 	
 		HeaderInfo
 		
@@ -453,14 +852,16 @@ public class UcsfReader {
 	
 	private static <T extends Algebra<T,U>, U extends SetFromFloats>
 	
-		void
+		long
 		
 			readNumbers(
 
 				DataInputStream dis,
 				HeaderInfo info,
 				T alg,
-				DimensionedDataSource<U> data
+				DimensionedDataSource<U> data,
+				String source,
+				ReadProgress progress
 			)
 			throws IOException
 	{
@@ -516,14 +917,28 @@ public class UcsfReader {
 
 		float[] numbers = new float[info.componentCount * xTileSize * yTileSize * zTileSize * aTileSize];
 		
+		byte[] tileBytes = new byte[4 * numbers.length];
+		
 		IntegerIndex pos = new IntegerIndex(info.dimCount);
 		
+		long numFloats = 0;
+		
+		progress.begin(4L * numbers.length * xTileCount * yTileCount * zTileCount * aTileCount);
+		
 		// walk all the tiles
 		
 		for (int xt = 0; xt < xTileCount; xt++) {
 
 			int xOrigin = xt * xTileSize;
 			
+			// one flight recorder block per slab of tiles along the slowest axis
+			
+			FlightEvents.BlockDecoded block = new FlightEvents.BlockDecoded();
+			
+			block.begin();
+			
+			long slabStart = numFloats;
+			
 			for (int yt = 0; yt < yTileCount; yt++) {
 				
 				int yOrigin = yt * yTileSize;
@@ -538,10 +953,13 @@ public class UcsfReader {
 						
 						// read a tile's worth of data into the tile structure
 
-						for (int n = 0; n < numbers.length; n++) {
-							
-							numbers[n] = dis.readFloat();
-						}
+						dis.readFully(tileBytes);
+						
+						ByteBuffer.wrap(tileBytes).asFloatBuffer().get(numbers);
+						
+						numFloats += numbers.length;
+						
+						progress.advance(4L * numbers.length);
 
 						// traverse the tile structure
 						
@@ -647,7 +1065,13 @@ public class UcsfReader {
 					}
 				}
 			}
+			
+			long slabFloats = numFloats - slabStart;
+			
+			block.report(source, "UCSF", 4 * slabFloats, slabFloats);
 		}
+		
+		return numFloats;
 	}
 
 	private static
@@ -758,7 +1182,7 @@ public class UcsfReader {
 		return result.toString();
 	}
 
-	private static class UcsfSpace implements CoordinateSpace {
+	static class UcsfSpace implements CoordinateSpace {
 
 		private final DimensionedDataSource<?> data;
 		
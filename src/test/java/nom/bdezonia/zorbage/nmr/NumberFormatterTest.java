@@ -0,0 +1,203 @@
+/*
+ * zorbage-nmr: : code for populating NMR file data into zorbage structures for further processing
+ *
+ * Copyright (C) 2023 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.nmr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that NumberFormatter writes the shortest decimal that parses back
+ * to the same double in the layout of Double.toString().
+ * 
+ * @author Barry DeZonia
+ */
+public class NumberFormatterTest {
+
+	@Test
+	public void randomBitPatterns() {
+		
+		Random rng = new Random(0x5eed);
+		
+		for (int i = 0; i < 2_000_000; i++) {
+			
+			check(Double.longBitsToDouble(rng.nextLong()));
+		}
+	}
+	
+	@Test
+	public void subnormals() {
+		
+		Random rng = new Random(0x5eed);
+		
+		for (long bits = 1; bits < 1000; bits++) {
+			
+			check(Double.longBitsToDouble(bits));
+		}
+		
+		for (int i = 0; i < 100_000; i++) {
+			
+			check(Double.longBitsToDouble(rng.nextLong() & ((1L << 52) - 1)));
+		}
+		
+		check(Double.MIN_NORMAL);
+		
+		check(Math.nextDown(Double.MIN_NORMAL));
+	}
+	
+	@Test
+	public void extremes() {
+		
+		check(Double.MIN_VALUE);
+		
+		check(-Double.MIN_VALUE);
+		
+		check(Double.MAX_VALUE);
+		
+		check(-Double.MAX_VALUE);
+		
+		assertEquals("4.9E-324", format(Double.MIN_VALUE));
+		
+		assertEquals("1.7976931348623157E308", format(Double.MAX_VALUE));
+	}
+	
+	@Test
+	public void powersOfTen() {
+		
+		for (int e = -323; e <= 308; e++) {
+			
+			double d = Double.parseDouble("1e" + e);
+			
+			check(d);
+			
+			check(Math.nextUp(d));
+			
+			check(Math.nextDown(d));
+		}
+		
+		assertEquals("1.0E-5", format(1e-5));
+		
+		assertEquals("100.0", format(100));
+		
+		assertEquals("1.0E22", format(1e22));
+		
+		assertEquals("1.0E23", format(1e23));
+	}
+	
+	@Test
+	public void notationSwitches() {
+		
+		assertEquals("0.001", format(1e-3));
+		
+		assertEquals("9.999999999999998E-4", format(Math.nextDown(1e-3)));
+		
+		assertEquals("9999999.999999998", format(Math.nextDown(1e7)));
+		
+		assertEquals("1.0E7", format(1e7));
+		
+		assertEquals("1.0000000000000002E7", format(Math.nextUp(1e7)));
+		
+		check(1e-3);
+		
+		check(Math.nextDown(1e-3));
+		
+		check(1e7);
+		
+		check(Math.nextDown(1e7));
+	}
+	
+	@Test
+	public void specialValues() {
+		
+		assertEquals("0.0", format(0.0));
+		
+		assertEquals("-0.0", format(-0.0));
+		
+		assertEquals("NaN", format(Double.NaN));
+		
+		assertEquals("Infinity", format(Double.POSITIVE_INFINITY));
+		
+		assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY));
+		
+		check(0.0);
+		
+		check(-0.0);
+		
+		check(Double.NaN);
+		
+		check(Double.POSITIVE_INFINITY);
+		
+		check(Double.NEGATIVE_INFINITY);
+	}
+	
+	@Test
+	public void longs() {
+		
+		long[] values = new long[] {0, 1, -1, 9, 10, -10, Long.MAX_VALUE, Long.MIN_VALUE};
+		
+		for (long v : values) {
+			
+			byte[] buf = new byte[NumberFormatter.MAX_LONG_CHARS];
+			
+			int end = NumberFormatter.formatLong(v, buf, 0);
+			
+			assertEquals(Long.toString(v), new String(buf, 0, end));
+		}
+	}
+	
+	// the formatted value parses back to the same value (any NaN matches NaN
+	//   but -0.0 must stay -0.0) and is never longer
+	//   than Double.toString()
+	
+	private static void check(double d) {
+		
+		String s = format(d);
+		
+		double back = Double.parseDouble(s);
+		
+		assertEquals(s, Double.doubleToLongBits(d), Double.doubleToLongBits(back));
+		
+		assertTrue(s + " is longer than " + Double.toString(d), s.length() <= Double.toString(d).length());
+	}
+	
+	// format at an offset so writes before the start or past the end show up
+	
+	private static String format(double d) {
+		
+		byte[] buf = new byte[NumberFormatter.MAX_DOUBLE_CHARS + 2];
+		
+		buf[0] = '#';
+		
+		int end = NumberFormatter.formatDouble(d, buf, 1);
+		
+		assertEquals('#', buf[0]);
+		
+		assertTrue(end - 1 <= NumberFormatter.MAX_DOUBLE_CHARS);
+		
+		return new String(buf, 1, end - 1);
+	}
+}